@@ -0,0 +1,318 @@
+package net.ornithemc.nester;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+
+import net.ornithemc.nester.jar.ClassNest;
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nests;
+
+/**
+ * A compiled nesting plan. For each class that is affected by the
+ * nests, it holds the exact attributes to write, so that nesting
+ * a single class does not need to look anything up in the jar.
+ * This lets nesting be fused into other bytecode pipelines, one
+ * class at a time. A class nester can be used from any number of
+ * threads at once.
+ * <p>
+ * Enclosing classes that are missing from the jar are not generated,
+ * as there is no class file for them to be applied to.
+ */
+public class ClassNester {
+
+	/**
+	 * Compile the given nests against the jar at the given source path.
+	 * The jar is read once, after which the plan no longer needs it.
+	 */
+	public static ClassNester of(Path src, Nests nests) {
+		return of(new Nester.Options(), src, nests);
+	}
+
+	/**
+	 * Compile the given nests against the jar at the given source path.
+	 * The jar is read once, after which the plan no longer needs it.
+	 */
+	public static ClassNester of(Nester.Options options, Path src, Nests nests) {
+		if (!Files.isReadable(src) || !Files.isRegularFile(src)) {
+			throw new NesterException("invalid source path: " + src);
+		}
+		if (nests == null) {
+			throw new NesterException("no nests provided");
+		}
+
+		SourceJar jar = new SourceJar(src, nests.symbols().scope(), options.parallel);
+		NestingJob job = new NestingJob(options, src, null, jar, ProgressListener.NONE, () -> false);
+
+		return job.compile(Nester.filter(nests));
+	}
+
+	static ClassNester compile(Map<ClassNode, Map<ClassNode, ClassNest>> nests, Map<String, String> renames) {
+		Map<String, ClassPlan> plans = new HashMap<>();
+
+		for (Map.Entry<ClassNode, Map<ClassNode, ClassNest>> entry : nests.entrySet()) {
+			plans.put(entry.getKey().name, ClassPlan.compile(entry.getKey(), entry.getValue().values()));
+		}
+
+		return new ClassNester(plans, renames);
+	}
+
+	private final Map<String, ClassPlan> plans;
+	private final Map<String, String> renames;
+
+	private ClassNester(Map<String, ClassPlan> plans, Map<String, String> renames) {
+		this.plans = plans;
+		this.renames = renames;
+	}
+
+	/**
+	 * Returns whether nesting may change the class with the given name.
+	 * Classes that are not affected can be passed over entirely. If any
+	 * classes are renamed, any class could reference them, and so all
+	 * classes are affected.
+	 */
+	public boolean affects(String className) {
+		return !renames.isEmpty() || plans.containsKey(className);
+	}
+
+	/**
+	 * Returns the name the given class has after nesting.
+	 */
+	public String map(String className) {
+		return renames.getOrDefault(className, className);
+	}
+
+	/**
+	 * Apply the nests to the given class file. If the class is renamed,
+	 * it should be written out under its new name, see {@link #map}.
+	 */
+	public byte[] transform(byte[] bytes) {
+		ClassReader reader = new ClassReader(bytes);
+		// copying the constant pool would keep the old class names around
+		ClassWriter writer = renames.isEmpty() ? new ClassWriter(reader, 0) : new ClassWriter(0);
+
+		reader.accept(visitor(writer), 0);
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Returns a visitor that applies the nests to each class passed
+	 * through it, before passing it on to the given visitor.
+	 */
+	public ClassVisitor visitor(ClassVisitor next) {
+		if (!renames.isEmpty()) {
+			// nests are planned by old names, so rename afterwards
+			next = new ClassRemapper(next, new SimpleRemapper(renames));
+		}
+
+		return attributeVisitor(next);
+	}
+
+	/**
+	 * Returns a visitor that applies the nests to each class passed
+	 * through it without renaming it, for when renaming is done
+	 * further down the chain.
+	 */
+	ClassVisitor attributeVisitor(ClassVisitor next) {
+		return new NestedClassAttributeClassVisitor(Opcodes.ASM9, next);
+	}
+
+	Map<String, String> getRenames() {
+		return renames;
+	}
+
+	/**
+	 * Returns the classes that nesting writes attributes to.
+	 */
+	Set<String> getPlannedClasses() {
+		return Collections.unmodifiableSet(plans.keySet());
+	}
+
+	private static class ClassPlan {
+
+		private static final ClassPlan EMPTY = new ClassPlan(null, null, null, Collections.emptyList(), Collections.emptyMap());
+
+		// the EnclosingMethod attribute, if any
+		private final String outerClass;
+		private final String outerMethod;
+		private final String outerMethodDesc;
+		// the InnerClasses attribute
+		private final List<InnerClass> innerClasses;
+		// the super types of the anonymous classes nested into this class
+		private final Map<String, String> anonymousSuperTypes;
+
+		private ClassPlan(String outerClass, String outerMethod, String outerMethodDesc, List<InnerClass> innerClasses, Map<String, String> anonymousSuperTypes) {
+			this.outerClass = outerClass;
+			this.outerMethod = outerMethod;
+			this.outerMethodDesc = outerMethodDesc;
+			this.innerClasses = innerClasses;
+			this.anonymousSuperTypes = anonymousSuperTypes;
+		}
+
+		private static ClassPlan compile(ClassNode clazz, Iterable<ClassNest> nests) {
+			String outerClass = null;
+			String outerMethod = null;
+			String outerMethodDesc = null;
+			List<InnerClass> innerClasses = new ArrayList<>();
+			Map<String, String> anonymousSuperTypes = new LinkedHashMap<>();
+
+			for (ClassNest nest : nests) {
+				if (nest.clazz.equals(clazz) && (nest.isAnonymous() || nest.isLocal())) {
+					outerClass = nest.enclClass.name;
+					outerMethod = nest.enclMethod == null ? null : nest.enclMethod.name;
+					outerMethodDesc = nest.enclMethod == null ? null : nest.enclMethod.desc;
+				}
+
+				innerClasses.add(new InnerClass(
+					nest.clazz.name,
+					nest.isInner() ? nest.enclClass.name : null,
+					nest.isInner() || nest.isLocal() ? stripLocalClassPrefix(nest.innerName) : null,
+					nest.innerAccess
+				));
+
+				if (nest.isAnonymous()) {
+					ClassNode cls = nest.clazz;
+					String superType;
+
+					if (cls.interfaces != null && !cls.interfaces.isEmpty()) {
+						superType = cls.interfaces.get(0);
+					} else {
+						superType = cls.superName;
+					}
+
+					anonymousSuperTypes.put(cls.name, superType);
+				}
+			}
+
+			return new ClassPlan(outerClass, outerMethod, outerMethodDesc, innerClasses, anonymousSuperTypes);
+		}
+
+		private static String stripLocalClassPrefix(String innerName) {
+			int idx = 0;
+
+			// local class names start with a number prefix
+			while (idx < innerName.length() && Character.isDigit(innerName.charAt(idx))) {
+				idx++;
+			}
+			// if entire inner name is a number, this class is anonymous, not local
+			if (idx == innerName.length()) {
+				idx = 0;
+			}
+
+			return innerName.substring(idx);
+		}
+	}
+
+	private static class InnerClass {
+
+		private final String name;
+		private final String outerName;
+		private final String innerName;
+		private final int access;
+
+		private InnerClass(String name, String outerName, String innerName, int access) {
+			this.name = name;
+			this.outerName = outerName;
+			this.innerName = innerName;
+			this.access = access;
+		}
+	}
+
+	private class NestedClassAttributeClassVisitor extends ClassVisitor {
+
+		private ClassPlan plan;
+
+		private NestedClassAttributeClassVisitor(int api, ClassVisitor next) {
+			super(api, next);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			this.plan = plans.getOrDefault(name, ClassPlan.EMPTY);
+
+			super.visit(version, access, name, signature, superName, interfaces);
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			MethodVisitor writer = super.visitMethod(access, name, descriptor, signature, exceptions);
+
+			if (plan.anonymousSuperTypes.isEmpty()) {
+				return writer;
+			}
+
+			return new MethodVisitor(Opcodes.ASM9, writer) {
+
+				private int local = -1;
+
+				@Override
+				public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+					local++;
+
+					Type type = Type.getType(desc);
+					String superType = plan.anonymousSuperTypes.get(type.getInternalName());
+
+					if (superType != null) {
+						String simpleName = getSimpleName(superType);
+						// make name camelCase and add index as suffix to avoid name conflicts
+						name = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1) + local;
+						desc = "L" + superType + ";";
+					}
+
+					super.visitLocalVariable(name, desc, signature, start, end, index);
+				}
+
+				private String getSimpleName(String className) {
+					int i = className.lastIndexOf('$');
+
+					if (i < 0) {
+						// not inner class, find simple name based on package separator
+						return className.substring(className.lastIndexOf('/') + 1);
+					}
+
+					// skip to first char after inner name separator
+					int j = ++i;
+
+					// class could be local, skip number prefix
+					while (j < className.length() && Character.isDigit(className.charAt(j))) {
+						j++;
+					}
+
+					// if all chars after the last $ are digits, the class is anonymous
+					// then just use the anonymous class number as simple name
+					return className.substring(j == className.length() ? i : j);
+				}
+			};
+		}
+
+		@Override
+		public void visitEnd() {
+			if (plan.outerClass != null) {
+				visitOuterClass(plan.outerClass, plan.outerMethod, plan.outerMethodDesc);
+			}
+			for (InnerClass innerClass : plan.innerClasses) {
+				visitInnerClass(innerClass.name, innerClass.outerName, innerClass.innerName, innerClass.access);
+			}
+
+			super.visitEnd();
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package net.ornithemc.nester;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import net.ornithemc.nester.jar.EntryBuffers;
+import net.ornithemc.nester.jar.ReferenceIndex;
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nests;
+
+/**
+ * Nests a jar into a directory over and over, for changing sets of
+ * nests. The source classes and the nested classes are kept in memory,
+ * so that each time only the classes affected by the changes in the
+ * nests are nested again, and only the class files that changed are
+ * written.
+ * <p>
+ * Resources are not touched, so the directory must first have been
+ * written in full, after which {@link #init} brings this nester up to
+ * date with it.
+ */
+class IncrementalNester {
+
+	private final Nester.Options options;
+	private final Path src;
+	private final Path root;
+	private final SourceJar jar;
+
+	private final Map<String, byte[]> sources;
+	// references by old name, to find the classes a rename affects
+	private final ReferenceIndex references;
+
+	private ClassNester nester;
+	// the output file name and contents of each class
+	private final Map<String, Output> outputs;
+	private byte[] index;
+
+	IncrementalNester(Nester.Options options, Path src, Path dst, SourceJar jar) {
+		this.options = options;
+		this.src = src;
+		this.root = dst.toAbsolutePath().normalize();
+		this.jar = jar;
+
+		this.sources = new LinkedHashMap<>();
+		this.references = new ReferenceIndex();
+
+		this.outputs = new HashMap<>();
+
+		read();
+	}
+
+	private void read() {
+		EntryBuffers buffers = EntryBuffers.get();
+
+		try (JarFile jarFile = new JarFile(src.toFile())) {
+			for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+
+				if (entry.getName().endsWith(".class")) {
+					try (InputStream is = jarFile.getInputStream(entry)) {
+						int length = buffers.read(is);
+						byte[] bytes = Arrays.copyOf(buffers.entry(), length);
+
+						// generated classes are not yet in the
+						// jar, so do not filter any references
+						sources.putIfAbsent(references.add(bytes, 0, length, name -> true), bytes);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new NesterException("could not read source jar", e);
+		}
+	}
+
+	/**
+	 * Returns whether the output for some set of nests is known,
+	 * so that it can be updated.
+	 */
+	boolean isInitialized() {
+		return nester != null;
+	}
+
+	/**
+	 * Bring this nester up to date with the output written in full
+	 * for the given nests, without writing anything.
+	 */
+	void init(Nests nests) {
+		try {
+			apply(nests, false);
+		} catch (IOException e) {
+			throw new NesterException("could not nest classes", e);
+		}
+	}
+
+	/**
+	 * Update the output for the given nests.
+	 *
+	 * @return the number of class files that were written or deleted
+	 */
+	int update(Nests nests) {
+		if (!isInitialized()) {
+			throw new IllegalStateException("no output to update");
+		}
+
+		try {
+			return apply(nests, true);
+		} catch (IOException e) {
+			invalidate();
+			throw new NesterException("could not update output", e);
+		} catch (NesterException e) {
+			invalidate();
+			throw e;
+		}
+	}
+
+	/**
+	 * Forget the current output, after it was left in an unknown state.
+	 */
+	private void invalidate() {
+		nester = null;
+		outputs.clear();
+		index = null;
+	}
+
+	private int apply(Nests nests, boolean write) throws IOException {
+		jar.reset();
+
+		NestingJob job = new NestingJob(options, src, root, jar, ProgressListener.NONE, () -> false);
+		ClassNester newNester = job.compile(Nester.filter(nests));
+
+		Map<String, byte[]> newClasses = new LinkedHashMap<>();
+
+		for (ClassNode newClass : jar.getNewClasses()) {
+			newClasses.put(newClass.name, NestingJob.writeNewClass(newNester, newClass));
+		}
+
+		Set<String> dirty = findDirtyClasses(newNester);
+		Map<String, Output> changed = new LinkedHashMap<>();
+
+		for (String className : dirty) {
+			byte[] bytes = sources.get(className);
+
+			if (bytes != null && newNester.affects(className)) {
+				bytes = newNester.transform(bytes);
+			}
+
+			put(className, newNester.map(className), bytes, changed);
+		}
+		for (Map.Entry<String, byte[]> newClass : newClasses.entrySet()) {
+			put(newClass.getKey(), newNester.map(newClass.getKey()), newClass.getValue(), changed);
+		}
+
+		// classes that were generated for the previous nests but not these
+		Set<String> removed = new HashSet<>();
+
+		for (String className : outputs.keySet()) {
+			if (!sources.containsKey(className) && !newClasses.containsKey(className)) {
+				removed.add(className);
+			}
+		}
+
+		byte[] newIndex = options.index ? job.writeIndex() : null;
+		int files = 0;
+
+		if (write) {
+			// delete old files first, as a class can take the old name of another
+			Set<String> newNames = new HashSet<>();
+			Set<String> oldNames = new HashSet<>();
+
+			for (Output output : changed.values()) {
+				newNames.add(output.name);
+			}
+			for (String className : removed) {
+				oldNames.add(outputs.get(className).name);
+			}
+			for (Map.Entry<String, Output> entry : changed.entrySet()) {
+				Output output = outputs.get(entry.getKey());
+
+				if (output != null && !output.name.equals(entry.getValue().name)) {
+					oldNames.add(output.name);
+				}
+			}
+
+			oldNames.removeAll(newNames);
+
+			for (String name : oldNames) {
+				if (Files.deleteIfExists(resolve(name))) {
+					files++;
+				}
+			}
+			for (Output output : changed.values()) {
+				Path file = resolve(output.name);
+
+				Files.createDirectories(file.getParent());
+				Files.write(file, output.bytes);
+
+				files++;
+			}
+
+			// keep the list of written files up to date for the next full run
+			Set<String> fileList = NestingJob.readFileList(root);
+			boolean listChanged = false;
+
+			for (String name : oldNames) {
+				listChanged |= fileList.remove(name + ".class");
+			}
+			for (String name : newNames) {
+				listChanged |= fileList.add(name + ".class");
+			}
+
+			if (listChanged) {
+				NestingJob.writeFileList(root, fileList);
+			}
+
+			if (newIndex != null && !Arrays.equals(index, newIndex)) {
+				Path file = root.resolve(NestingIndex.ENTRY_NAME);
+
+				Files.createDirectories(file.getParent());
+				Files.write(file, newIndex);
+			}
+		}
+
+		outputs.keySet().removeAll(removed);
+		outputs.putAll(changed);
+
+		if (write && options.verify && !changed.isEmpty()) {
+			Set<String> classNames = new LinkedHashSet<>();
+
+			for (Output output : changed.values()) {
+				classNames.add(output.name);
+			}
+
+			new NestingVerifier(options, root, newNester.getRenames()).verify(classNames, ProgressListener.NONE);
+		}
+
+		nester = newNester;
+		index = newIndex;
+
+		return files;
+	}
+
+	/**
+	 * Find the classes that the new nests could change compared to the
+	 * current ones: the classes either of them writes attributes to, and
+	 * the classes that are renamed differently or that reference a class
+	 * that is renamed differently.
+	 */
+	private Set<String> findDirtyClasses(ClassNester newNester) {
+		if (nester == null) {
+			return sources.keySet();
+		}
+
+		Set<String> dirty = new LinkedHashSet<>();
+
+		dirty.addAll(nester.getPlannedClasses());
+		dirty.addAll(newNester.getPlannedClasses());
+
+		Map<String, String> renames = nester.getRenames();
+		Map<String, String> newRenames = newNester.getRenames();
+		Set<String> renamed = new HashSet<>();
+
+		for (String className : renames.keySet()) {
+			if (!Objects.equals(renames.get(className), newRenames.get(className))) {
+				renamed.add(className);
+			}
+		}
+		for (String className : newRenames.keySet()) {
+			if (!Objects.equals(renames.get(className), newRenames.get(className))) {
+				renamed.add(className);
+			}
+		}
+
+		if (!renamed.isEmpty()) {
+			dirty.addAll(renamed);
+
+			for (String className : sources.keySet()) {
+				if (references.referencesAny(className, renamed)) {
+					dirty.add(className);
+				}
+			}
+		}
+
+		// generated classes are handled on their own
+		dirty.retainAll(sources.keySet());
+
+		return Collections.unmodifiableSet(dirty);
+	}
+
+	private void put(String className, String name, byte[] bytes, Map<String, Output> changed) {
+		Output output = outputs.get(className);
+
+		if (output == null || !output.name.equals(name) || !Arrays.equals(output.bytes, bytes)) {
+			changed.put(className, new Output(name, bytes));
+		}
+	}
+
+	private Path resolve(String className) {
+		Path file = root.resolve(className + ".class").normalize();
+
+		if (!file.startsWith(root)) {
+			throw new NesterException("invalid class name: " + className);
+		}
+
+		return file;
+	}
+
+	private static class Output {
+
+		private final String name;
+		private final byte[] bytes;
+
+		private Output(String name, byte[] bytes) {
+			this.name = name;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -1,7 +1,21 @@
 package net.ornithemc.nester;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.mapping.Mappings;
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NesterIo;
+import net.ornithemc.nester.nest.Nests;
+import net.ornithemc.nester.nest.NestsDiff;
+import net.ornithemc.nester.nest.NestsMerge;
+import net.ornithemc.nester.nest.NestsRemapper;
 
 public class Main {
 
@@ -20,12 +34,39 @@ public class Main {
 			case "--nestJar":
 				nestJar(args);
 				break;
+			case "--diffNests":
+				diffNests(args);
+				break;
+			case "--mergeNests":
+				mergeNests(args);
+				break;
+			case "--remapNests":
+				remapNests(args);
+				break;
+			case "--inferNests":
+				inferNests(args);
+				break;
+			case "--nestShard":
+				// runs one shard of a sharded nesting job, see Nester.Options#shards
+				nestShard(args);
+				break;
 			default:
 				System.out.println("Unknown command: " + command);
 				printUsage();
 
 				System.exit(1);
 			}
+		} catch (NestsMerge.ConflictException e) {
+			for (NestsMerge.Conflict conflict : e.getMerge().getConflicts()) {
+				System.out.println("Conflict for class " + conflict.className + ":");
+				System.out.println("  base:  " + format(conflict.base));
+				System.out.println("  left:  " + format(conflict.left));
+				System.out.println("  right: " + format(conflict.right));
+			}
+
+			System.out.println(e.getMerge().getConflicts().size() + " conflicts, kept base nests for those classes...");
+
+			System.exit(1);
 		} catch (NesterException e) {
 			System.out.println("Something went wrong...");
 			e.printStackTrace();
@@ -38,19 +79,214 @@ public class Main {
 
 	private static void printUsage() {
 		System.out.println("Correct usage:");
-		System.out.println("  --nestJar <source jar> <destination jar> <nests file>");
+		System.out.println("  --nestJar <source jar> <destination jar or directory> <nests file> [--dir] [--parallel] [--shards <count>] [--verify] [--index] [--watch]");
+		System.out.println("  --diffNests <nests file> <nests file> [<nests file>...]");
+		System.out.println("  --mergeNests <base nests file> <left nests file> <right nests file> <destination nests file>");
+		System.out.println("  --inferNests <source jar> <destination nests file>");
+		System.out.println("  --remapNests <source nests file> <destination nests file> <mappings file> <source namespace> <destination namespace>");
 	}
 
 	private static void nestJar(String[] args) {
-		if (args.length == 4) {
+		if (args.length >= 4) {
 			Path src = Paths.get(args[1]);
 			Path dst = Paths.get(args[2]);
 			Path nests = Paths.get(args[3]);
 
-			Nester.nestJar(src, dst, nests);
+			Nester.Options options = new Nester.Options();
+			boolean watch = false;
+
+			for (int i = 4; i < args.length; i++) {
+				switch (args[i]) {
+				case "--watch":
+					watch = true;
+					break;
+				case "--dir":
+					options.directory(true);
+					break;
+				case "--parallel":
+					options.parallel(true);
+					break;
+				case "--index":
+					options.index(true);
+					break;
+				case "--verify":
+					options.verify(true);
+					break;
+				case "--shards":
+					int shards = (++i < args.length) ? parseShards(args[i]) : -1;
+
+					if (shards < 1) {
+						System.out.println("Invalid shard count, expected a positive number...");
+						printUsage();
+
+						return;
+					}
+
+					options.shards(shards);
+					break;
+				default:
+					System.out.println("Unknown option: " + args[i]);
+					printUsage();
+
+					return;
+				}
+			}
+
+			if (watch) {
+				NestsWatcher.watch(options, src, dst, nests);
+			} else {
+				Nester.nestJar(options, src, dst, nests);
+			}
 		} else {
-			System.out.println("Incorrect number of arguments! Expected 4, got " + args.length + "...");
+			System.out.println("Incorrect number of arguments! Expected at least 4, got " + args.length + "...");
 			printUsage();
 		}
 	}
+
+	private static int parseShards(String arg) {
+		try {
+			return Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static void nestShard(String[] args) {
+		if (args.length == 10) {
+			Path src = Paths.get(args[1]);
+			Nests nests = Nests.of(Paths.get(args[2]));
+			Path renamesFile = Paths.get(args[3]);
+			int shard = Integer.parseInt(args[4]);
+			int shardCount = Integer.parseInt(args[5]);
+			Path remapDst = Paths.get(args[6]);
+			Path passThroughDst = Paths.get(args[7]);
+
+			Nester.Options options = new Nester.Options()
+				.remap(Boolean.parseBoolean(args[8]))
+				.heapBudget(Long.parseLong(args[9]));
+
+			try {
+				List<Nest> shardNests = new ArrayList<>();
+
+				for (Nest nest : nests) {
+					shardNests.add(nest);
+				}
+
+				SourceJar jar = new SourceJar(src, nests.symbols());
+				NestingJob job = new NestingJob(options, src, null, jar, ProgressListener.NONE, () -> false);
+
+				job.runShard(shardNests, NestingJob.readRenames(renamesFile), shard, shardCount, remapDst, passThroughDst);
+			} catch (IOException e) {
+				throw new NesterException("could not read renames", e);
+			}
+		} else {
+			System.out.println("Incorrect number of arguments! Expected 10, got " + args.length + "...");
+			System.exit(1);
+		}
+	}
+
+	private static void diffNests(String[] args) {
+		if (args.length >= 3) {
+			try {
+				BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(System.out));
+
+				// each file is read once and then diffed against
+				// both the file before and the file after it
+				Path fromPath = Paths.get(args[1]);
+				Nests from = Nests.of(fromPath);
+
+				for (int i = 2; i < args.length; i++) {
+					Path toPath = Paths.get(args[i]);
+					Nests to = Nests.of(toPath);
+
+					bw.write("diff " + fromPath + " " + toPath);
+					bw.newLine();
+					NesterIo.write(NestsDiff.of(from, to), bw);
+
+					fromPath = toPath;
+					from = to;
+				}
+
+				bw.flush();
+			} catch (IOException e) {
+				throw new NesterException("could not write nests diff", e);
+			}
+		} else {
+			System.out.println("Incorrect number of arguments! Expected at least 3, got " + args.length + "...");
+			printUsage();
+		}
+	}
+
+	private static void mergeNests(String[] args) {
+		if (args.length == 5) {
+			Nests base = Nests.of(Paths.get(args[1]));
+			Nests left = Nests.of(Paths.get(args[2]));
+			Nests right = Nests.of(Paths.get(args[3]));
+			Path dst = Paths.get(args[4]).toAbsolutePath();
+
+			NestsMerge merge = NestsMerge.of(base, left, right);
+
+			try {
+				NesterIo.write(merge.getMerged(), dst);
+			} catch (IOException e) {
+				throw new NesterException("could not write merged nests", e);
+			}
+
+			// the merged nests are written either way, so
+			// the conflicts can be resolved in the output
+			merge.checkConflicts();
+		} else {
+			System.out.println("Incorrect number of arguments! Expected 5, got " + args.length + "...");
+			printUsage();
+		}
+	}
+
+	private static void remapNests(String[] args) {
+		if (args.length == 6) {
+			Path src = Paths.get(args[1]);
+			Path dst = Paths.get(args[2]);
+			Path mappings = Paths.get(args[3]);
+			String srcNamespace = args[4];
+			String dstNamespace = args[5];
+
+			try {
+				NestsRemapper.remap(src, dst, Mappings.of(mappings, srcNamespace, dstNamespace));
+			} catch (IOException e) {
+				throw new NesterException("could not remap nests", e);
+			}
+		} else {
+			System.out.println("Incorrect number of arguments! Expected 6, got " + args.length + "...");
+			printUsage();
+		}
+	}
+
+	private static void inferNests(String[] args) {
+		if (args.length == 3) {
+			Path src = Paths.get(args[1]);
+			Path dst = Paths.get(args[2]).toAbsolutePath();
+
+			Nests nests = NestInferrer.infer(src);
+
+			try {
+				NesterIo.write(nests, dst);
+			} catch (IOException e) {
+				throw new NesterException("could not write nests", e);
+			}
+
+			System.out.println("Proposed " + nests.size() + " nests...");
+		} else {
+			System.out.println("Incorrect number of arguments! Expected 3, got " + args.length + "...");
+			printUsage();
+		}
+	}
+
+	private static String format(Nest nest) {
+		if (nest == null) {
+			return "<none>";
+		}
+
+		return nest.enclClassName
+			+ (nest.enclMethodName == null ? "" : "." + nest.enclMethodName + nest.enclMethodDesc)
+			+ " " + nest.innerName + " " + nest.access;
+	}
 }
@@ -0,0 +1,43 @@
+package net.ornithemc.nester;
+
+import java.util.Objects;
+
+/**
+ * Identifies a method by its owner, name and descriptor, for use as
+ * a map key without building a string for each lookup.
+ */
+public final class MethodKey {
+
+	public final String owner;
+	public final String name;
+	public final String desc;
+
+	public MethodKey(String owner, String name, String desc) {
+		this.owner = owner;
+		this.name = name;
+		this.desc = desc;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof MethodKey)) {
+			return false;
+		}
+
+		MethodKey key = (MethodKey)obj;
+		return Objects.equals(owner, key.owner) && Objects.equals(name, key.name) && Objects.equals(desc, key.desc);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * Objects.hashCode(owner) + Objects.hashCode(name)) + Objects.hashCode(desc);
+	}
+
+	@Override
+	public String toString() {
+		return owner + "." + name + desc;
+	}
+}
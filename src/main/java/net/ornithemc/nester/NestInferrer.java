@@ -0,0 +1,533 @@
+package net.ornithemc.nester;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import net.ornithemc.nester.jar.EntryBuffers;
+import net.ornithemc.nester.jar.RawClass;
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+/**
+ * Proposes nests for a jar that has none, based on the traces that
+ * javac leaves in nested classes: synthetic fields that hold the
+ * outer instance or captured variables, constructors that take the
+ * outer instance, the places where a class is instantiated, and
+ * calls to synthetic accessors of the outer class.
+ */
+public class NestInferrer {
+
+	/**
+	 * Analyze the jar at the given path and propose nests for it.
+	 */
+	public static Nests infer(Path src) {
+		if (!Files.isReadable(src) || !Files.isRegularFile(src)) {
+			throw new NesterException("invalid source path: " + src);
+		}
+
+		NestInferrer inferrer = new NestInferrer();
+
+		inferrer.read(src);
+		inferrer.findCandidates();
+		inferrer.findInstantiations();
+
+		return inferrer.propose();
+	}
+
+	private final Map<String, byte[]> classBytes;
+	private final Map<String, RawClass> classes;
+	private final Map<String, Candidate> candidates;
+	private final Set<String> orphans;
+
+	private NestInferrer() {
+		this.classBytes = new ConcurrentHashMap<>();
+		this.classes = new ConcurrentHashMap<>();
+		this.candidates = new ConcurrentHashMap<>();
+		this.orphans = ConcurrentHashMap.newKeySet();
+	}
+
+	private void read(Path src) {
+		EntryBuffers buffers = EntryBuffers.get();
+		List<byte[]> entries = new ArrayList<>();
+
+		try (JarInputStream js = new JarInputStream(new FileInputStream(src.toFile()))) {
+			for (JarEntry entry; (entry = js.getNextJarEntry()) != null; ) {
+				if (entry.getName().endsWith(".class")) {
+					int length = buffers.read(js);
+					entries.add(Arrays.copyOf(buffers.entry(), length));
+				}
+			}
+		} catch (IOException e) {
+			throw new NesterException("could not read jar", e);
+		}
+
+		entries.parallelStream().forEach(bytes -> {
+			RawClass clazz = RawClass.read(bytes);
+
+			classes.put(clazz.getName(), clazz);
+			classBytes.put(clazz.getName(), bytes);
+		});
+	}
+
+	private void findCandidates() {
+		// classes with synthetic static methods may be the target
+		// of accessor calls from classes nested inside them
+		Set<String> accessorOwners = ConcurrentHashMap.newKeySet();
+
+		classes.values().parallelStream().forEach(clazz -> {
+			for (int i = 0; i < clazz.getMethodCount(); i++) {
+				if (isAccessor(clazz.getMethodAccess(i))) {
+					accessorOwners.add(clazz.getName());
+					break;
+				}
+			}
+		});
+
+		classes.values().parallelStream().forEach(clazz -> {
+			// only classes that pass this constant pool level filter
+			// are analyzed any further
+			if (hasSyntheticFields(clazz) || clazz.hasUtf8Prefix("this$") || clazz.hasUtf8Prefix("val$")) {
+				analyzeFields(clazz);
+			} else if (!accessorOwners.isEmpty()) {
+				analyzeAccessorCalls(clazz, accessorOwners);
+			}
+		});
+
+		if (!orphans.isEmpty()) {
+			findOrphanOuters();
+		}
+
+		// a class calling the accessors of another class that also calls
+		// its own accessors cannot tell us which of the two is the outer
+		candidates.values().removeIf(c -> {
+			if (c.hasOuterInstance) {
+				return false;
+			}
+
+			Candidate outer = candidates.get(c.outer);
+			return outer != null && !outer.hasOuterInstance && outer.outer.equals(c.name);
+		});
+	}
+
+	private void analyzeFields(RawClass clazz) {
+		String name = clazz.getName();
+		String outer = null;
+		boolean capturesLocals = false;
+
+		List<String> syntheticTypes = new ArrayList<>();
+
+		for (int i = 0; i < clazz.getFieldCount(); i++) {
+			int access = clazz.getFieldAccess(i);
+			String fieldName = clazz.getFieldName(i);
+			String type = getClassType(clazz.getFieldDesc(i));
+
+			if (fieldName.startsWith("this$") && type != null) {
+				outer = type;
+			} else if (fieldName.startsWith("val$")) {
+				capturesLocals = true;
+			} else if ((access & Opcodes.ACC_SYNTHETIC) != 0 && (access & Opcodes.ACC_FINAL) != 0) {
+				syntheticTypes.add(type);
+			}
+		}
+
+		// names of synthetic fields are lost to obfuscation, but the outer
+		// instance is always passed as the first constructor parameter
+		if (outer == null) {
+			String firstParameter = null;
+
+			for (int i = 0; i < clazz.getMethodCount(); i++) {
+				if (clazz.getMethodName(i).equals("<init>")) {
+					Type[] parameters = Type.getArgumentTypes(clazz.getMethodDesc(i));
+
+					if (parameters.length > 0 && parameters[0].getSort() == Type.OBJECT) {
+						firstParameter = parameters[0].getInternalName();
+					}
+
+					break;
+				}
+			}
+
+			if (firstParameter != null && syntheticTypes.remove(firstParameter)) {
+				outer = firstParameter;
+			}
+		}
+		if (!syntheticTypes.isEmpty()) {
+			capturesLocals = true;
+		}
+
+		if (outer != null && !outer.equals(name) && classes.containsKey(outer)) {
+			candidates.put(name, new Candidate(clazz, outer, true, capturesLocals));
+		} else if (outer == null && capturesLocals) {
+			// local and anonymous classes in a static context
+			// capture variables but not the outer instance
+			orphans.add(name);
+		}
+	}
+
+	private void findOrphanOuters() {
+		Map<String, Set<String>> referrers = new ConcurrentHashMap<>();
+
+		classes.values().parallelStream().forEach(clazz -> {
+			for (int i = 1; i < clazz.getConstantCount(); i++) {
+				if (clazz.isClass(i)) {
+					String type = clazz.getClass(i);
+
+					if (orphans.contains(type) && !type.equals(clazz.getName())) {
+						referrers.computeIfAbsent(type, key -> ConcurrentHashMap.newKeySet()).add(clazz.getName());
+					}
+				}
+			}
+		});
+
+		// if only one class refers to it, that class must be the
+		// one that instantiates it, and so it must be the outer class
+		for (Map.Entry<String, Set<String>> e : referrers.entrySet()) {
+			if (e.getValue().size() == 1) {
+				String name = e.getKey();
+				String outer = e.getValue().iterator().next();
+
+				candidates.put(name, new Candidate(classes.get(name), outer, false, true));
+			}
+		}
+	}
+
+	private void analyzeAccessorCalls(RawClass clazz, Set<String> accessorOwners) {
+		String name = clazz.getName();
+		String outer = null;
+
+		for (int i = 1; i < clazz.getConstantCount(); i++) {
+			if (clazz.isMethodRef(i)) {
+				String owner = clazz.getMemberRefOwner(i);
+
+				if (owner.equals(name) || !accessorOwners.contains(owner)) {
+					continue;
+				}
+				if (!isAccessor(classes.get(owner), clazz.getMemberRefName(i), clazz.getMemberRefDesc(i))) {
+					continue;
+				}
+				// calling the accessors of several classes is
+				// not evidence of being nested in any of them
+				if (outer != null && !outer.equals(owner)) {
+					return;
+				}
+
+				outer = owner;
+			}
+		}
+
+		if (outer != null) {
+			candidates.put(name, new Candidate(clazz, outer, false, false));
+		}
+	}
+
+	private void findInstantiations() {
+		Map<String, Map<String, Candidate>> candidatesByOuter = new HashMap<>();
+
+		for (Candidate candidate : candidates.values()) {
+			candidatesByOuter.computeIfAbsent(candidate.outer, key -> new HashMap<>()).put(candidate.name, candidate);
+		}
+
+		// only the outer classes of candidates get a full parse
+		candidatesByOuter.entrySet().parallelStream().forEach(e -> {
+			Map<String, Candidate> nested = e.getValue();
+			ClassReader reader = new ClassReader(classBytes.get(e.getKey()));
+
+			reader.accept(new ClassVisitor(Opcodes.ASM9) {
+
+				@Override
+				public MethodVisitor visitMethod(int access, String methodName, String methodDesc, String signature, String[] exceptions) {
+					return new MethodVisitor(Opcodes.ASM9) {
+
+						@Override
+						public void visitTypeInsn(int opcode, String type) {
+							if (opcode == Opcodes.NEW) {
+								Candidate candidate = nested.get(type);
+
+								if (candidate != null) {
+									candidate.addSite(methodName, methodDesc);
+								}
+							}
+						}
+					};
+				}
+			}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		});
+	}
+
+	private Nests propose() {
+		Map<String, Proposal> proposals = new TreeMap<>(SourceJar.CLASS_NAME_COMPARATOR);
+
+		for (Candidate candidate : candidates.values()) {
+			Proposal proposal = classify(candidate);
+
+			if (proposal != null) {
+				proposals.put(candidate.name, proposal);
+			}
+		}
+
+		removeCycles(proposals);
+
+		Nests nests = Nests.empty();
+		Map<String, Set<String>> usedInnerNames = new HashMap<>();
+
+		for (Proposal p : proposals.values()) {
+			Set<String> used = usedInnerNames.computeIfAbsent(p.candidate.outer, key -> new HashSet<>());
+			String innerName = getInnerName(p, used);
+
+			used.add(innerName);
+
+			nests.add(new Nest(
+				p.type,
+				nests.symbols().intern(p.candidate.name),
+				nests.symbols().intern(p.candidate.outer),
+				nests.symbols().intern(p.enclMethodName),
+				nests.symbols().intern(p.enclMethodDesc),
+				innerName,
+				getInnerAccess(p)
+			));
+		}
+
+		return nests;
+	}
+
+	private Proposal classify(Candidate c) {
+		Set<String> siteMethods = new LinkedHashSet<>();
+
+		for (String[] site : c.sites) {
+			siteMethods.add(site[0] + site[1]);
+		}
+
+		if (c.capturesLocals) {
+			// local and anonymous classes can only be
+			// instantiated in their enclosing method
+			if (siteMethods.size() != 1) {
+				return null;
+			}
+
+			String[] site = c.sites.get(0);
+			// a class in a static initializer is not enclosed by a method
+			boolean clinit = site[0].equals("<clinit>");
+
+			if (c.sites.size() == 1) {
+				return new Proposal(c, NestType.ANONYMOUS, clinit ? null : site[0], clinit ? null : site[1]);
+			}
+			if (!clinit) {
+				return new Proposal(c, NestType.LOCAL, site[0], site[1]);
+			}
+
+			return null;
+		}
+
+		if (c.hasOuterInstance && c.sites.size() == 1 && isAnonymousShape(c.clazz)) {
+			String[] site = c.sites.get(0);
+			boolean clinit = site[0].equals("<clinit>");
+
+			return new Proposal(c, NestType.ANONYMOUS, clinit ? null : site[0], clinit ? null : site[1]);
+		}
+
+		return new Proposal(c, NestType.INNER, null, null);
+	}
+
+	private void removeCycles(Map<String, Proposal> proposals) {
+		for (String name : new ArrayList<>(proposals.keySet())) {
+			Set<String> chain = new HashSet<>();
+
+			for (Proposal p = proposals.get(name); p != null; p = proposals.get(p.candidate.outer)) {
+				if (!chain.add(p.candidate.name)) {
+					proposals.remove(name);
+					break;
+				}
+			}
+		}
+	}
+
+	private String getInnerName(Proposal p, Set<String> used) {
+		String name = p.candidate.name;
+		String outer = p.candidate.outer;
+
+		// keep names that already fit
+		if (name.startsWith(outer + "$")) {
+			String innerName = name.substring(outer.length() + 1);
+
+			if (!innerName.isEmpty() && !used.contains(innerName) && getNestType(innerName) == p.type) {
+				return innerName;
+			}
+		}
+
+		if (p.type == NestType.ANONYMOUS) {
+			for (int index = 1; ; index++) {
+				String innerName = Integer.toString(index);
+
+				if (!isTaken(outer, innerName, used)) {
+					return innerName;
+				}
+			}
+		}
+
+		String simpleName = getSimpleName(name);
+		String innerName = (p.type == NestType.LOCAL) ? "1" + simpleName : simpleName;
+
+		for (int index = 2; isTaken(outer, innerName, used); index++) {
+			innerName = (p.type == NestType.LOCAL) ? index + simpleName : simpleName + index;
+		}
+
+		return innerName;
+	}
+
+	/**
+	 * Check whether the given inner name is already used by another
+	 * nest or by a class in the jar, in the given outer class.
+	 */
+	private boolean isTaken(String outer, String innerName, Set<String> used) {
+		return used.contains(innerName) || classes.containsKey(outer + "$" + innerName);
+	}
+
+	private int getInnerAccess(Proposal p) {
+		int access = p.candidate.clazz.getAccess();
+
+		if (p.type != NestType.INNER) {
+			return access & (Opcodes.ACC_FINAL | Opcodes.ACC_ABSTRACT);
+		}
+
+		access &= Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_ANNOTATION | Opcodes.ACC_ENUM;
+
+		// without an outer instance, the inner class must be static
+		if (!p.candidate.hasOuterInstance) {
+			access |= Opcodes.ACC_STATIC;
+		}
+
+		return access;
+	}
+
+	private static NestType getNestType(String innerName) {
+		int idx = 0;
+
+		while (idx < innerName.length() && Character.isDigit(innerName.charAt(idx))) {
+			idx++;
+		}
+
+		return (idx == innerName.length()) ? NestType.ANONYMOUS : ((idx == 0) ? NestType.INNER : NestType.LOCAL);
+	}
+
+	private static String getSimpleName(String className) {
+		int i = Math.max(className.lastIndexOf('/'), className.lastIndexOf('$')) + 1;
+
+		// inner and local names may not start with a number
+		while (i < className.length() && Character.isDigit(className.charAt(i))) {
+			i++;
+		}
+
+		return i == className.length() ? "Nested" : className.substring(i);
+	}
+
+	private static String getClassType(String desc) {
+		return desc.charAt(0) == 'L' ? desc.substring(1, desc.length() - 1) : null;
+	}
+
+	private static boolean hasSyntheticFields(RawClass clazz) {
+		for (int i = 0; i < clazz.getFieldCount(); i++) {
+			if ((clazz.getFieldAccess(i) & Opcodes.ACC_SYNTHETIC) != 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isAccessor(int access) {
+		return (access & (Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC)) == (Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC);
+	}
+
+	private static boolean isAccessor(RawClass owner, String name, String desc) {
+		for (int i = 0; i < owner.getMethodCount(); i++) {
+			if (isAccessor(owner.getMethodAccess(i)) && owner.getMethodName(i).equals(name) && owner.getMethodDesc(i).equals(desc)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Anonymous classes have a single constructor and always
+	 * extend a class or implement an interface.
+	 */
+	private static boolean isAnonymousShape(RawClass clazz) {
+		int constructors = 0;
+
+		for (int i = 0; i < clazz.getMethodCount(); i++) {
+			if (clazz.getMethodName(i).equals("<init>")) {
+				constructors++;
+			}
+		}
+
+		boolean hasSuper = !"java/lang/Object".equals(clazz.getSuperName()) || clazz.getInterfaces().length == 1;
+		boolean isAbstract = (clazz.getAccess() & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) != 0;
+
+		return constructors == 1 && hasSuper && !isAbstract;
+	}
+
+	private static class Candidate {
+
+		private final RawClass clazz;
+		private final String name;
+		private final String outer;
+		private final boolean hasOuterInstance;
+		private final boolean capturesLocals;
+
+		// the methods of the outer class in which this
+		// class is instantiated, once per instantiation
+		private final List<String[]> sites;
+
+		private Candidate(RawClass clazz, String outer, boolean hasOuterInstance, boolean capturesLocals) {
+			this.clazz = clazz;
+			this.name = clazz.getName();
+			this.outer = outer;
+			this.hasOuterInstance = hasOuterInstance;
+			this.capturesLocals = capturesLocals;
+
+			this.sites = new ArrayList<>();
+		}
+
+		private void addSite(String methodName, String methodDesc) {
+			sites.add(new String[] { methodName, methodDesc });
+		}
+	}
+
+	private static class Proposal {
+
+		private final Candidate candidate;
+		private final NestType type;
+		private final String enclMethodName;
+		private final String enclMethodDesc;
+
+		private Proposal(Candidate candidate, NestType type, String enclMethodName, String enclMethodDesc) {
+			this.candidate = candidate;
+			this.type = type;
+			this.enclMethodName = enclMethodName;
+			this.enclMethodDesc = enclMethodDesc;
+		}
+	}
+}
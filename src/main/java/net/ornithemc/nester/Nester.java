@@ -1,35 +1,15 @@
 package net.ornithemc.nester;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
-
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Label;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.MethodNode;
-
-import net.fabricmc.tinyremapper.OutputConsumerPath;
-import net.fabricmc.tinyremapper.TinyRemapper;
-
-import net.ornithemc.nester.jar.ClassNest;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
 import net.ornithemc.nester.jar.SourceJar;
 import net.ornithemc.nester.nest.Nest;
 import net.ornithemc.nester.nest.NestType;
@@ -39,8 +19,15 @@ public class Nester {
 
 	public static class Options {
 
-		private boolean silent = true;
-		private boolean remap = true;
+		boolean silent = true;
+		boolean remap = true;
+		long heapBudget = -1;
+		boolean directory = false;
+		boolean parallel = false;
+		int shards = 1;
+		List<String> shardJvmArgs = Collections.emptyList();
+		boolean verify = false;
+		boolean index = false;
 
 		/**
 		 * Set whether the log progress through System.out.
@@ -58,6 +45,107 @@ public class Nester {
 			this.remap = remap;
 			return this;
 		}
+
+		/**
+		 * Set the budget, in bytes, for class data held in memory
+		 * while remapping. If the classes of the jar exceed this
+		 * budget, they are remapped one at a time, streamed from
+		 * the intermediate jar on disk, rather than all loaded into
+		 * TinyRemapper at once. A negative budget means no budget.
+		 */
+		public Options heapBudget(long heapBudget) {
+			this.heapBudget = heapBudget;
+			return this;
+		}
+
+		/**
+		 * Set whether to write the output as a directory of class
+		 * and resource files rather than as a jar. Files are written
+		 * in parallel, and files whose contents did not change are
+		 * left alone. The files that are written are listed in the
+		 * directory, and files that an earlier run listed but that
+		 * are no longer part of the output are removed. Other files
+		 * in the directory are never touched.
+		 */
+		public Options directory(boolean directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * Set whether to parse the classes of the source jar on
+		 * multiple threads.
+		 */
+		public Options parallel(boolean parallel) {
+			this.parallel = parallel;
+			return this;
+		}
+
+		/**
+		 * Set the number of shards to split the jar into. With more
+		 * than one shard, the classes of the jar are split between
+		 * that many child processes, which fix the nested class
+		 * attributes of and remap their share of the classes.
+		 * <p>
+		 * Each shard still reads the class headers of the whole jar,
+		 * as resolving a nest needs its enclosing class and method,
+		 * which can belong to another shard. Only the rewriting and
+		 * remapping of classes is split, so sharding pays off for
+		 * large jars, where those dominate, and costs more than it
+		 * saves for small ones.
+		 */
+		public Options shards(int shards) {
+			if (shards < 1) {
+				throw new NesterException("invalid shard count: " + shards);
+			}
+
+			this.shards = shards;
+			return this;
+		}
+
+		/**
+		 * Set the JVM arguments, such as the maximum heap size, for
+		 * the child processes that run the shards.
+		 */
+		public Options shardJvmArgs(String... shardJvmArgs) {
+			this.shardJvmArgs = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(shardJvmArgs)));
+			return this;
+		}
+
+		/**
+		 * Set whether to verify the output after it is written. The
+		 * classes changed by nesting, or all classes if any classes
+		 * are renamed, are checked on multiple threads for structural
+		 * problems, InnerClasses entries that do not agree between
+		 * inner and outer classes, missing enclosing methods, and
+		 * references to old class names.
+		 */
+		public Options verify(boolean verify) {
+			this.verify = verify;
+			return this;
+		}
+
+		/**
+		 * Set whether to write a nesting index into the output, see
+		 * {@link NestingIndex}.
+		 */
+		public Options index(boolean index) {
+			this.index = index;
+			return this;
+		}
+
+		private Options copy() {
+			return new Options()
+				.silent(silent)
+				.remap(remap)
+				.heapBudget(heapBudget)
+				.directory(directory)
+				.parallel(parallel)
+				.shards(shards)
+				.shardJvmArgs(shardJvmArgs.toArray(new String[0]))
+				.verify(verify)
+				.index(index);
+		}
 	}
 
 	/**
@@ -93,459 +181,145 @@ public class Nester {
 	 * write it to the given destination path.
 	 */
 	public static void nestJar(Options options, Path src, Path dst, Nests nests) {
-		if (!Files.isReadable(src) || !Files.isRegularFile(src)) {
-			throw new NesterException("invalid source path: " + src);
-		}
-		if ((Files.exists(dst) && !Files.isWritable(dst))) {
-			throw new NesterException("invalid destination path: " + dst);
-		}
 		if (nests == null) {
 			throw new NesterException("no nests provided");
 		}
 
-		Nester nester = new Nester(options, src, dst);
-
-		nester.accept(nests);
-		nester.applyNests();
+		of(options, nests).apply(src, dst);
 	}
 
-	private final Options options;
-
-	private final Path src;
-	private final Path dst;
-	private final SourceJar jar;
-
-	private final Map<ClassNode, Map<ClassNode, ClassNest>> nests;
-	private final Map<String, String> mappings;
-
-	private Nester(Options options, Path src, Path dst) {
-		this.options = options;
-
-		this.src = src;
-		this.dst = dst;
-		this.jar = new SourceJar(this.src);
-
-		this.nests = new LinkedHashMap<>();
-		this.mappings = new HashMap<>();
+	/**
+	 * Prepare a nester that applies the given nests. It can be applied
+	 * to any number of jars, from any number of threads at once.
+	 */
+	public static Nester of(Nests nests) {
+		return of(new Options(), nests);
 	}
 
-	private void accept(Nests nests) {
-		int c = 0;
-
-		for (Nest nest : nests) {
-			NestType type = nest.type;
-
-			ClassNode clazz = jar.getClass(nest.className);
-			ClassNode enclClass = jar.getClass(nest.enclClassName);
-			MethodNode enclMethod = jar.getMethod(nest.enclClassName, nest.enclMethodName, nest.enclMethodDesc);
-
-			if (clazz != null && enclClass == null) {
-				enclClass = jar.newClass(nest.enclClassName);
-			}
-
-			String innerName = nest.innerName;
-			int innerAccess = nest.access;
-
-			if (accept(type, clazz, enclClass, enclMethod, innerName, innerAccess)) {
-				c++;
-			}
+	/**
+	 * Prepare a nester that applies the given nests. It can be applied
+	 * to any number of jars, from any number of threads at once.
+	 */
+	public static Nester of(Options options, Nests nests) {
+		if (nests == null) {
+			throw new NesterException("no nests provided");
 		}
 
-		if (!options.silent) {
-			System.out.println("Prepared " + c + " nests...");
-		}
+		return new Nester(options.copy(), nests);
 	}
 
-	private boolean accept(NestType type, ClassNode clazz, ClassNode enclClass, MethodNode enclMethod, String innerName, int innerAccess) {
-		if (clazz == null || enclClass == null) {
-			return false;
-		}
-		if (innerName == null || innerAccess < 0) {
-			return false;
-		}
-		// anonymous class may have an enclosing method, they may not
-		// inner classes NEVER have an enclosing method
-		// local classes ALWAYS have an enclosing method
-		if (type == NestType.INNER && enclMethod != null) {
-			return false;
-		}
-		if (type == NestType.LOCAL && enclMethod == null) {
-			return false;
-		}
-		// for anonymous classes, the inner name is typically
-		// a number: their anonymous class index
-		if (type == NestType.ANONYMOUS) {
-			int anonIndex = -1;
-
-			try {
-				anonIndex = Integer.parseInt(innerName);
-			} catch (NumberFormatException e) {
-
-			}
-
-			if (anonIndex < 1) {
-				return false;
-			}
-		}
-
-		// only accept each class once
-		// after all, one class cannot be nested into multiple places
-		if (nests.containsKey(clazz)) {
-			Map<ClassNode, ClassNest> referencedNests = nests.get(clazz);
-
-			if (referencedNests.containsKey(clazz)) {
-				return false;
-			}
-		}
-
-		ClassNest nest = new ClassNest(type, clazz, enclClass, enclMethod, innerName, innerAccess);
+	private final Options options;
 
-		addNestReference(clazz, nest);
-		addNestReference(enclClass, nest);
+	private final List<Nest> nests;
+	private final SymbolTable symbols;
 
-		return true;
-	}
+	private Nester(Options options, Nests nests) {
+		this.options = options;
 
-	private void addNestReference(ClassNode clazz, ClassNest nest) {
-		nests.computeIfAbsent(clazz, key -> new LinkedHashMap<>()).put(nest.clazz, nest);
+		this.nests = Collections.unmodifiableList(filter(nests));
+		this.symbols = nests.symbols();
 	}
 
-	private void applyNests() {
-		try {
-			// parent dirs might not yet exist
-			Files.createDirectories(dst.getParent());
-
-			if (options.remap) {
-				Path tmp1 = Files.createTempFile("tmp1", ".jar");
-				Path tmp2 = Files.createTempFile("tmp2", ".jar");
-
-				// TinyRemapper does not like it when the file already exists
-				Files.delete(tmp2);
-
-				applyNests(src, tmp1);
-				remapJar(tmp1, tmp2);
-				// TinyRemapper shuffles the classes
-				sortJar(src, tmp2, dst); // also copies over non-class files
-
-				Files.delete(tmp1);
-				Files.delete(tmp2);
-			} else {
-				Path tmp = Files.createTempFile("tmp", ".jar");
-
-				applyNests(src, tmp);
-				sortJar(src, tmp, dst); // copy over non-class files
-			}
+	/**
+	 * Filter out the nests that could never be accepted, no matter
+	 * what jar they are applied to.
+	 */
+	static List<Nest> filter(Nests nests) {
+		List<Nest> valid = new ArrayList<>();
 
-			if (!options.silent) {
-				System.out.println("Done!");
+		for (Nest nest : nests) {
+			if (nest.innerName == null || nest.access < 0) {
+				continue;
 			}
-		} catch (IOException e) {
-			throw new NesterException("could not nest jar", e);
-		}
-	}
-
-	private void applyNests(Path src, Path dst) {
-		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(dst.toFile()))) {
-			for (ClassNode newClass : jar.getNewClasses()) {
-				JarEntry entry = new JarEntry(newClass.name + ".class");
-				ClassWriter writer = new ClassWriter(0);
-				ClassVisitor visitor = new NestedClassAttributeClassVisitor(Opcodes.ASM9, writer);
-
-				visitor.visit(
-					newClass.version,
-					newClass.access,
-					newClass.name,
-					null,
-					newClass.superName,
-					null
-				);
-				visitor.visitEnd();
-
-				jos.putNextEntry(entry);
-				jos.write(writer.toByteArray());
-				jos.flush();
-				jos.closeEntry();
+			// local classes ALWAYS have an enclosing method
+			if (nest.type == NestType.LOCAL && (nest.enclMethodName == null || nest.enclMethodDesc == null)) {
+				continue;
 			}
+			// for anonymous classes, the inner name is typically
+			// a number: their anonymous class index
+			if (nest.type == NestType.ANONYMOUS) {
+				int anonIndex = -1;
 
-			try (JarInputStream jis = new JarInputStream(new FileInputStream(src.toFile()))) {
-				for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
-					if (entry.getName().endsWith(".class")) {
-						ClassReader reader = new ClassReader(jis);
-						ClassWriter writer = new ClassWriter(reader, 0);
-						ClassVisitor visitor = new NestedClassAttributeClassVisitor(Opcodes.ASM9, writer);
-
-						reader.accept(visitor, 0);
+				try {
+					anonIndex = Integer.parseInt(nest.innerName);
+				} catch (NumberFormatException e) {
 
-						jos.putNextEntry(new JarEntry(entry.getName()));
-						jos.write(writer.toByteArray());
-						jos.flush();
-						jos.closeEntry();
-					}
 				}
-			}
-
-			if (!options.silent) {
-				System.out.println("Applied nests...");
-			}
 
-			jos.finish();
-		} catch (IOException e) {
-			throw new NesterException("could not apply nests to jar", e);
-		}
-	}
-
-	private void remapJar(Path src, Path dst) {
-		mappings.clear();
-
-		TinyRemapper remapper = TinyRemapper.newRemapper().withMappings(ma -> {
-			for (ClassNode clazz : nests.keySet()) {
-				String oldName = clazz.name;
-				String newName = remap(clazz.name);
-
-				if (!newName.equals(oldName)) {
-					ma.acceptClass(oldName, newName);
+				if (anonIndex < 1) {
+					continue;
 				}
 			}
-		}).build();
-
-		try (OutputConsumerPath oc = new OutputConsumerPath.Builder(dst).build()) {
-			remapper.readInputs(src);
-			remapper.apply(oc);
-		} catch (IOException e) {
-			throw new NesterException("could not remap jar", e);
-		} finally {
-			remapper.finish();
-		}
 
-		if (!options.silent) {
-			System.out.println("Remapped nested classes...");
-		}
-	}
-
-	private String remap(String className) {
-		String mapping = mappings.get(className);
-
-		if (mapping == null) {
-			mapping = map(className);
-			mappings.put(className, mapping);
+			valid.add(nest);
 		}
 
-		return mapping;
+		return valid;
 	}
 
-	private String map(String className) {
-		ClassNode clazz = jar.getClass(className);
-
-		if (clazz == null) {
-			return className;
-		}
-
-		Map<ClassNode, ClassNest> referencedNests = nests.get(clazz);
-
-		if (referencedNests == null) {
-			return className;
-		}
-
-		ClassNest nest = referencedNests.get(clazz);
-
-		if (nest == null) {
-			return className;
-		}
-
-		return remap(nest.enclClass.name) + "$" + nest.innerName;
+	/**
+	 * Apply the nests to the jar at the given source path and
+	 * write it to the given destination path.
+	 */
+	public void apply(Path src, Path dst) {
+		apply(src, dst, ProgressListener.NONE, () -> false);
 	}
 
-	private void sortJar(Path src, Path nestedSrc, Path dst) {
-		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(dst.toFile()))) {
-			byte[] buffer = new byte[4096];
-			int read = 0;
-
-			try (JarInputStream jis = new JarInputStream(new FileInputStream(src.toFile()))) {
-				for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
-					if (!entry.getName().endsWith(".class")) {
-						jos.putNextEntry(new JarEntry(entry.getName()));
-
-						while ((read = jis.read(buffer)) > 0) {
-							jos.write(buffer, 0, read);
-						}
-
-						jos.flush();
-						jos.closeEntry();
-					}
-				}
-			}
-
-			if (!options.silent) {
-				System.out.println("Moved over non-class files...");
-			}
-
-			JarFile nestedSrcJar = new JarFile(nestedSrc.toFile());
-
-			for (ClassNode c : jar.getClasses()) {
-				String entryName = (options.remap ? remap(c.name) : c.name) + ".class";
-				JarEntry entry = nestedSrcJar.getJarEntry(entryName);
-
-				try (InputStream jis = nestedSrcJar.getInputStream(entry)) {
-					jos.putNextEntry(new JarEntry(entryName));
-
-					while ((read = jis.read(buffer)) > 0) {
-						jos.write(buffer, 0, read);
-					}
-
-					jos.flush();
-					jos.closeEntry();
-				}
-			}
-
-			nestedSrcJar.close();
-
-			if (!options.silent) {
-				System.out.println("Sorted class files...");
-			}
-
-			jos.finish();
-		} catch (IOException e) {
-			throw new NesterException("could not sort jar");
-		}
+	/**
+	 * Apply the nests to the jar at the given source path and write
+	 * it to the given destination path, on the given executor.
+	 */
+	public CompletableFuture<Void> applyAsync(Path src, Path dst, Executor executor) {
+		return applyAsync(src, dst, executor, ProgressListener.NONE);
 	}
 
-	private class NestedClassAttributeClassVisitor extends ClassVisitor {
-
-		private ClassNode clazz;
-		private Collection<ClassNest> nests;
-
-		private NestedClassAttributeClassVisitor(int api, ClassWriter writer) {
-			super(api, writer);
-		}
-
-		@Override
-		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-			this.clazz = Nester.this.jar.getClass(name);
-
-			if (this.clazz != null) {
-				Map<ClassNode, ClassNest> referencedNests = Nester.this.nests.get(this.clazz);
+	/**
+	 * Apply the nests to the jar at the given source path and write
+	 * it to the given destination path, on the given executor.
+	 * Cancelling the returned future stops the job before the next
+	 * class is processed, and leaves the destination as it was.
+	 */
+	public CompletableFuture<Void> applyAsync(Path src, Path dst, Executor executor, ProgressListener progress) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
 
-				if (referencedNests != null) {
-					this.nests = referencedNests.values();
-				}
+		executor.execute(() -> {
+			if (future.isCancelled()) {
+				return;
 			}
-			if (this.nests == null) {
-				this.nests = Collections.emptySet();
-			}
-
-			super.visit(version, access, name, signature, superName, interfaces);
-		}
-
-		@Override
-		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-			MethodVisitor writer = super.visitMethod(access, name, descriptor, signature, exceptions);
-
-			return new MethodVisitor(Opcodes.ASM9, writer) {
-
-				private int local = -1;
-
-				@Override
-				public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
-					local++;
-
-					if (!nests.isEmpty()) {
-						Type type = Type.getType(desc);
-						String typeName = type.getInternalName();
-						ClassNode cls = jar.getClass(typeName);
-
-						for (ClassNest nest : nests) {
-							if (nest.type == NestType.ANONYMOUS && nest.clazz.equals(cls)) {
-								String superType;
-
-								if (cls.interfaces != null && !cls.interfaces.isEmpty()) {
-									superType = cls.interfaces.get(0);
-								} else {
-									superType = cls.superName;
-								}
-
-								String simpleName = getSimpleName(superType);
-								// make name camelCase and add index as suffix to avoid name conflicts
-								name = Character.toLowerCase(simpleName.charAt(0)) + simpleName.substring(1) + local;
-								desc = "L" + superType + ";";
-							}
-						}
-					}
-
-					super.visitLocalVariable(name, desc, signature, start, end, index);
-				}
-
-				private String getSimpleName(String className) {
-					int i = className.lastIndexOf('$');
-
-					if (i < 0) {
-						// not inner class, find simple name based on package separator
-						return className.substring(className.lastIndexOf('/') + 1);
-					}
 
-					// skip to first char after inner name separator
-					int j = ++i;
-
-					// class could be local, skip number prefix
-					while (j < className.length() && Character.isDigit(className.charAt(j))) {
-						j++;
-					}
-
-					// if all chars after the last $ are digits, the class is anonymous
-					// then just use the anonymous class number as simple name
-					return className.substring(j == className.length() ? i : j);
-				}
-			};
-		}
-
-		@Override
-		public void visitEnd() {
-			for (ClassNest nest : nests) {
-				visitNest(nest);
+			try {
+				apply(src, dst, progress, future::isCancelled);
+				future.complete(null);
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
 			}
+		});
 
-			super.visitEnd();
-		}
-
-		private void visitNest(ClassNest nest) {
-			if (nest.clazz.equals(clazz)) {
-				visitOuterClass(nest);
-			}
+		return future;
+	}
 
-			visitInnerClass(nest);
+	private void apply(Path src, Path dst, ProgressListener progress, BooleanSupplier cancelled) {
+		if (!Files.isReadable(src) || !Files.isRegularFile(src)) {
+			throw new NesterException("invalid source path: " + src);
 		}
 
-		private void visitOuterClass(ClassNest nest) {
-			if (nest.isAnonymous() || nest.isLocal()) {
-				visitOuterClass(
-					nest.enclClass.name,
-					nest.enclMethod == null ? null : nest.enclMethod.name,
-					nest.enclMethod == null ? null : nest.enclMethod.desc
-				);
-			}
-		}
+		// the names of the jar are only shared for the duration of the
+		// job, so that a long-lived nester does not hold on to them
+		apply(new SourceJar(src, symbols.scope(), options.parallel), src, dst, progress, cancelled);
+	}
 
-		private void visitInnerClass(ClassNest nest) {
-			visitInnerClass(
-				nest.clazz.name,
-				nest.isInner() ? nest.enclClass.name : null,
-				nest.isInner() || nest.isLocal() ? stripLocalClassPrefix(nest.innerName) : null,
-				nest.innerAccess
-			);
+	/**
+	 * Apply the nests to an already loaded jar. The jar must not have
+	 * been used for any other nests, or it must have been reset.
+	 */
+	void apply(SourceJar jar, Path src, Path dst, ProgressListener progress, BooleanSupplier cancelled) {
+		if ((Files.exists(dst) && !Files.isWritable(dst))) {
+			throw new NesterException("invalid destination path: " + dst);
 		}
 
-		private String stripLocalClassPrefix(String innerName) {
-			int idx = 0;
-
-			// local class names start with a number prefix
-			while (idx < innerName.length() && Character.isDigit(innerName.charAt(idx))) {
-				idx++;
-			}
-			// if entire inner name is a number, this class is anonymous, not local
-			if (idx == innerName.length()) {
-				idx = 0;
-			}
-
-			return innerName.substring(idx);
-		}
+		// all state that is specific to one jar lives in the job,
+		// which is what allows nesters to be shared between threads
+		NestingJob job = new NestingJob(options, src, dst, jar, progress, cancelled);
+		job.run(nests);
 	}
 }
@@ -0,0 +1,66 @@
+package net.ornithemc.nester;
+
+import java.io.File;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+
+import net.ornithemc.nester.nest.Nests;
+
+/**
+ * A Java agent that applies nests to classes as they are loaded,
+ * rather than nesting the whole jar up front. Start the JVM with
+ * {@code -javaagent:nester.jar=<source jar><path separator><nests file>}.
+ * <p>
+ * A class loader can only define a class under the name it was
+ * asked for, so the agent never renames classes. It only writes
+ * the nested class attributes, as if nesting with
+ * {@link Nester.Options#remap(boolean) remap(false)}.
+ */
+public class NestingAgent implements ClassFileTransformer {
+
+	public static void premain(String args, Instrumentation instrumentation) {
+		agentmain(args, instrumentation);
+	}
+
+	public static void agentmain(String args, Instrumentation instrumentation) {
+		String[] paths = (args == null) ? new String[0] : args.split(File.pathSeparator);
+
+		if (paths.length != 2) {
+			throw new NesterException("expected agent arguments <source jar>" + File.pathSeparator + "<nests file>");
+		}
+
+		instrumentation.addTransformer(of(Paths.get(paths[0]), Nests.of(Paths.get(paths[1]))));
+	}
+
+	/**
+	 * Prepare a transformer that applies the given nests to the
+	 * classes of the jar at the given source path.
+	 */
+	public static NestingAgent of(Path src, Nests nests) {
+		return new NestingAgent(ClassNester.of(new Nester.Options().remap(false), src, nests));
+	}
+
+	private final ClassNester nester;
+
+	private NestingAgent(ClassNester nester) {
+		this.nester = nester;
+	}
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+		if (className == null || !nester.affects(className)) {
+			return null;
+		}
+
+		try {
+			return nester.transform(classfileBuffer);
+		} catch (Throwable t) {
+			// the JVM silently drops exceptions thrown by transformers
+			System.err.println("Could not nest class " + className + ": " + t);
+			return null;
+		}
+	}
+}
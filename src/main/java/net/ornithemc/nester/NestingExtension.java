@@ -0,0 +1,58 @@
+package net.ornithemc.nester;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import net.fabricmc.tinyremapper.TinyRemapper;
+
+import net.ornithemc.nester.nest.Nests;
+
+/**
+ * A TinyRemapper extension that applies nests in the same pass that
+ * remaps the jar, rather than in a separate pass afterwards. The nest
+ * renames are contributed as class mappings, and the nested class
+ * attributes are added as the classes are remapped.
+ * <p>
+ * The nests must use the names of the jar TinyRemapper reads, and
+ * the other mappings must not rename the nested classes.
+ */
+public class NestingExtension implements TinyRemapper.Extension {
+
+	/**
+	 * Prepare an extension that applies the given nests to the
+	 * classes of the jar at the given source path.
+	 */
+	public static NestingExtension of(Path src, Nests nests) {
+		return of(ClassNester.of(src, nests));
+	}
+
+	/**
+	 * Prepare an extension that applies the given nesting plan.
+	 */
+	public static NestingExtension of(ClassNester nester) {
+		if (nester == null) {
+			throw new NesterException("no nester provided");
+		}
+
+		return new NestingExtension(nester);
+	}
+
+	private final ClassNester nester;
+
+	private NestingExtension(ClassNester nester) {
+		this.nester = nester;
+	}
+
+	@Override
+	public void attach(TinyRemapper.Builder builder) {
+		builder.withMappings(ma -> {
+			for (Map.Entry<String, String> rename : nester.getRenames().entrySet()) {
+				ma.acceptClass(rename.getKey(), rename.getValue());
+			}
+		});
+		// the plan uses the names of the input jar, so the attributes
+		// must be added before TinyRemapper remaps them along with
+		// the rest of the class
+		builder.extraPreApplyVisitor((cls, next) -> nester.attributeVisitor(next));
+	}
+}
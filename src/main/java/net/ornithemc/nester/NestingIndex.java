@@ -0,0 +1,188 @@
+package net.ornithemc.nester;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import net.ornithemc.nester.nest.NestType;
+
+/**
+ * The nesting structure of a nested jar, written alongside its classes
+ * so that tools can load it in one read rather than parsing the
+ * InnerClasses attribute of every class. Each line holds one nested
+ * class, as its final name, original name, nest type, chain of outer
+ * classes and enclosing method, separated by tabs.
+ */
+public class NestingIndex {
+
+	/**
+	 * The path of the index inside the output jar or directory.
+	 */
+	public static final String ENTRY_NAME = "META-INF/nesting.tsv";
+
+	private static final String HEADER = "nesting\t1";
+
+	/**
+	 * Read the index of the nested jar or directory at the given path,
+	 * or return {@code null} if it has none.
+	 */
+	public static NestingIndex read(Path path) {
+		try {
+			if (Files.isDirectory(path)) {
+				Path file = path.resolve(ENTRY_NAME);
+
+				if (!Files.isRegularFile(file)) {
+					return null;
+				}
+
+				try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+					return read(br);
+				}
+			}
+
+			try (JarFile jar = new JarFile(path.toFile())) {
+				JarEntry entry = jar.getJarEntry(ENTRY_NAME);
+
+				if (entry == null) {
+					return null;
+				}
+
+				try (BufferedReader br = new BufferedReader(new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+					return read(br);
+				}
+			}
+		} catch (IOException e) {
+			throw new NesterException("unable to read nesting index", e);
+		}
+	}
+
+	public static NestingIndex read(BufferedReader reader) throws IOException {
+		String header = reader.readLine();
+
+		if (!HEADER.equals(header)) {
+			throw new NesterException("invalid nesting index header: " + header);
+		}
+
+		NestingIndex index = new NestingIndex();
+
+		for (String line; (line = reader.readLine()) != null;) {
+			String[] args = line.split("\t", -1);
+
+			if (args.length != 6) {
+				continue;
+			}
+
+			NestType type;
+
+			try {
+				type = NestType.valueOf(args[2]);
+			} catch (IllegalArgumentException e) {
+				continue;
+			}
+
+			List<String> outerClasses = args[3].isEmpty()
+				? Collections.emptyList()
+				: Collections.unmodifiableList(Arrays.asList(args[3].split(";")));
+
+			index.add(new Entry(
+				args[0],
+				args[1],
+				type,
+				outerClasses,
+				args[4].isEmpty() ? null : args[4],
+				args[5].isEmpty() ? null : args[5]
+			));
+		}
+
+		return index;
+	}
+
+	private final Map<String, Entry> entries;
+	private final Map<String, Entry> entriesByOriginalName;
+
+	NestingIndex() {
+		this.entries = new LinkedHashMap<>();
+		this.entriesByOriginalName = new HashMap<>();
+	}
+
+	void add(Entry entry) {
+		entries.put(entry.name, entry);
+		entriesByOriginalName.put(entry.originalName, entry);
+	}
+
+	/**
+	 * Returns the entry for the nested class with the given final name,
+	 * or {@code null} if that class is not nested.
+	 */
+	public Entry get(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Returns the entry for the nested class with the given original
+	 * name, or {@code null} if that class is not nested.
+	 */
+	public Entry getByOriginalName(String originalName) {
+		return entriesByOriginalName.get(originalName);
+	}
+
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public void write(BufferedWriter writer) throws IOException {
+		writer.write(HEADER);
+		writer.newLine();
+
+		for (Entry entry : entries.values()) {
+			writer.write(entry.name);
+			writer.write('\t');
+			writer.write(entry.originalName);
+			writer.write('\t');
+			writer.write(entry.type.name());
+			writer.write('\t');
+			writer.write(String.join(";", entry.outerClasses));
+			writer.write('\t');
+			writer.write(entry.enclMethodName == null ? "" : entry.enclMethodName);
+			writer.write('\t');
+			writer.write(entry.enclMethodDesc == null ? "" : entry.enclMethodDesc);
+			writer.newLine();
+		}
+	}
+
+	public static class Entry {
+
+		public final String name;
+		public final String originalName;
+		public final NestType type;
+		/**
+		 * The final names of the classes this class is nested in,
+		 * from its enclosing class out to its top level class.
+		 */
+		public final List<String> outerClasses;
+		public final String enclMethodName;
+		public final String enclMethodDesc;
+
+		public Entry(String name, String originalName, NestType type, List<String> outerClasses, String enclMethodName, String enclMethodDesc) {
+			this.name = name;
+			this.originalName = originalName;
+			this.type = type;
+			this.outerClasses = outerClasses;
+			this.enclMethodName = enclMethodName;
+			this.enclMethodDesc = enclMethodDesc;
+		}
+	}
+}
@@ -0,0 +1,1195 @@
+package net.ornithemc.nester;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.fabricmc.tinyremapper.OutputConsumerPath;
+import net.fabricmc.tinyremapper.TinyRemapper;
+
+import net.ornithemc.nester.ProgressListener.Stage;
+import net.ornithemc.nester.jar.ClassNest;
+import net.ornithemc.nester.jar.EntryBuffers;
+import net.ornithemc.nester.jar.ReferenceIndex;
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.NesterIo;
+
+class NestingJob {
+
+	/**
+	 * The path of the list of files written to an output directory,
+	 * so that the next run knows which files it may remove.
+	 */
+	static final String FILE_LIST = "META-INF/nester-files.txt";
+
+	private final Nester.Options options;
+	private final ProgressListener progress;
+	private final BooleanSupplier cancelled;
+
+	private final Path src;
+	private final Path dst;
+	private final SourceJar jar;
+
+	private final Map<ClassNode, Map<ClassNode, ClassNest>> nests;
+	private final Map<String, String> mappings;
+	private final ReferenceIndex references;
+
+	private ClassNester nester;
+
+	// the classes to process, all of them unless running as a shard
+	private Predicate<String> classFilter = className -> true;
+
+	private long classBytes;
+	private int remapClasses;
+	private long remapClassBytes;
+
+	NestingJob(Nester.Options options, Path src, Path dst, SourceJar jar, ProgressListener progress, BooleanSupplier cancelled) {
+		this.options = options;
+		this.progress = progress;
+		this.cancelled = cancelled;
+
+		this.src = src;
+		this.dst = dst;
+		this.jar = jar;
+
+		this.nests = new LinkedHashMap<>();
+		this.mappings = new HashMap<>();
+		this.references = new ReferenceIndex();
+	}
+
+	void run(Collection<Nest> nests) {
+		accept(nests);
+
+		if (options.shards > 1) {
+			applyNestsSharded(nests);
+		} else {
+			applyNests();
+		}
+	}
+
+	/**
+	 * Compile a plan that applies the given nests one class at a time.
+	 */
+	ClassNester compile(Collection<Nest> nests) {
+		accept(nests);
+
+		// only class names are remapped, so each class can
+		// be renamed on its own without knowing the rest of the jar
+		return options.remap ? ClassNester.compile(this.nests, collectRenames()) : nester;
+	}
+
+	/**
+	 * Process one shard of the jar, as part of a sharded nesting job that
+	 * runs in another process. The classes of this shard are written to
+	 * the given remap and pass-through jars, and the parent process merges
+	 * the outputs of all shards.
+	 */
+	void runShard(Collection<Nest> nests, Map<String, String> renames, int shard, int shardCount, Path remapDst, Path passThroughDst) {
+		accept(nests);
+
+		classFilter = className -> isInShard(className, shard, shardCount);
+
+		Path tmp = null;
+
+		try {
+			if (options.remap) {
+				tmp = Files.createTempFile("tmp", ".jar");
+
+				// TinyRemapper does not like it when the file already exists
+				Files.deleteIfExists(remapDst);
+
+				applyNests(src, tmp, passThroughDst, renames);
+				remapJar(tmp, remapDst, renames);
+			} else {
+				applyNests(src, remapDst, null, null);
+			}
+		} catch (IOException e) {
+			throw new NesterException("could not nest shard " + shard, e);
+		} finally {
+			deleteIfExists(tmp);
+		}
+	}
+
+	private static boolean isInShard(String className, int shard, int shardCount) {
+		return Math.floorMod(className.hashCode(), shardCount) == shard;
+	}
+
+	private void applyNestsSharded(Collection<Nest> nests) {
+		Path dir = null;
+		List<Process> processes = new ArrayList<>();
+
+		try {
+			// parent dirs might not yet exist
+			Files.createDirectories(dst.getParent());
+
+			dir = Files.createTempDirectory("shards");
+
+			// renames depend on the enclosing chain of each class,
+			// which can cross shards, so they are planned up front
+			Path nestsFile = dir.resolve("nests.txt");
+			Path renamesFile = dir.resolve("renames.txt");
+
+			try (BufferedWriter bw = Files.newBufferedWriter(nestsFile)) {
+				for (Nest nest : nests) {
+					NesterIo.write(nest, bw);
+					bw.newLine();
+				}
+			}
+
+			Map<String, String> renames = options.remap ? collectRenames() : Collections.emptyMap();
+			writeRenames(renames, renamesFile);
+
+			List<Path> outputs = new ArrayList<>();
+
+			for (int shard = 0; shard < options.shards; shard++) {
+				Path remapJar = dir.resolve("shard" + shard + "-remap.jar");
+				Path passThroughJar = dir.resolve("shard" + shard + "-pass.jar");
+
+				List<String> command = new ArrayList<>();
+
+				command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+				command.addAll(options.shardJvmArgs);
+				command.add("-cp");
+				command.add(getClassPath());
+				command.add(Main.class.getName());
+				command.add("--nestShard");
+				command.add(src.toAbsolutePath().toString());
+				command.add(nestsFile.toString());
+				command.add(renamesFile.toString());
+				command.add(Integer.toString(shard));
+				command.add(Integer.toString(options.shards));
+				command.add(remapJar.toString());
+				command.add(passThroughJar.toString());
+				command.add(Boolean.toString(options.remap));
+				command.add(Long.toString(options.heapBudget));
+
+				processes.add(new ProcessBuilder(command).inheritIO().start());
+				outputs.add(remapJar);
+				outputs.add(passThroughJar);
+			}
+
+			for (int shard = 0; shard < processes.size(); shard++) {
+				Process process = processes.get(shard);
+
+				while (!process.waitFor(100, TimeUnit.MILLISECONDS)) {
+					checkCancelled();
+				}
+
+				if (process.exitValue() != 0) {
+					throw new NesterException("shard " + shard + " failed with exit code " + process.exitValue());
+				}
+			}
+
+			if (!options.silent) {
+				System.out.println("Applied nests in " + options.shards + " shards...");
+			}
+
+			// not every shard writes a pass-through jar
+			outputs.removeIf(output -> !Files.exists(output));
+
+			writeOutput(src, dst, outputs.toArray(new Path[0]));
+
+			if (options.verify) {
+				// which classes were remapped is only known to the shards
+				verify(renames, true);
+			}
+
+			if (!options.silent) {
+				System.out.println("Done!");
+			}
+		} catch (CancellationException e) {
+			// output is only moved into place once it is complete
+			if (!options.silent) {
+				System.out.println("Cancelled!");
+			}
+
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NesterException("interrupted while waiting for shards", e);
+		} catch (IOException e) {
+			throw new NesterException("could not nest jar in shards", e);
+		} finally {
+			for (Process process : processes) {
+				process.destroyForcibly();
+			}
+
+			if (dir != null) {
+				try (Stream<Path> files = Files.list(dir)) {
+					files.forEach(this::deleteIfExists);
+				} catch (IOException e) {
+				}
+
+				deleteIfExists(dir);
+			}
+		}
+	}
+
+	/**
+	 * Returns a class path for child processes, made from the locations
+	 * of Nester and its dependencies, so that it does not matter how the
+	 * current process was started.
+	 */
+	private static String getClassPath() {
+		Set<String> paths = new LinkedHashSet<>();
+
+		for (Class<?> c : new Class<?>[] { Nester.class, ClassVisitor.class, ClassNode.class, ClassRemapper.class, TinyRemapper.class }) {
+			try {
+				paths.add(Paths.get(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+			} catch (Exception e) {
+				throw new NesterException("could not locate " + c.getName(), e);
+			}
+		}
+
+		return String.join(File.pathSeparator, paths);
+	}
+
+	static void writeRenames(Map<String, String> renames, Path path) throws IOException {
+		try (BufferedWriter bw = Files.newBufferedWriter(path)) {
+			for (Map.Entry<String, String> rename : renames.entrySet()) {
+				bw.write(rename.getKey());
+				bw.write('\t');
+				bw.write(rename.getValue());
+				bw.newLine();
+			}
+		}
+	}
+
+	static Map<String, String> readRenames(Path path) throws IOException {
+		Map<String, String> renames = new HashMap<>();
+
+		try (BufferedReader br = Files.newBufferedReader(path)) {
+			for (String line; (line = br.readLine()) != null;) {
+				int tab = line.indexOf('\t');
+
+				if (tab > 0) {
+					renames.put(line.substring(0, tab), line.substring(tab + 1));
+				}
+			}
+		}
+
+		return renames;
+	}
+
+	private void accept(Collection<Nest> nests) {
+		int c = 0;
+
+		for (Nest nest : nests) {
+			NestType type = nest.type;
+
+			ClassNode clazz = jar.getClass(nest.className);
+			ClassNode enclClass = jar.getClass(nest.enclClassName);
+			MethodNode enclMethod = jar.getMethod(nest.enclClassName, nest.enclMethodName, nest.enclMethodDesc);
+
+			if (clazz != null && enclClass == null) {
+				enclClass = jar.newClass(nest.enclClassName);
+			}
+
+			String innerName = nest.innerName;
+			int innerAccess = nest.access;
+
+			if (accept(type, clazz, enclClass, enclMethod, innerName, innerAccess)) {
+				c++;
+			}
+		}
+
+		// renames are applied to the whole jar in a separate pass
+		nester = ClassNester.compile(this.nests, Collections.emptyMap());
+
+		if (!options.silent) {
+			System.out.println("Prepared " + c + " nests...");
+		}
+	}
+
+	private boolean accept(NestType type, ClassNode clazz, ClassNode enclClass, MethodNode enclMethod, String innerName, int innerAccess) {
+		if (clazz == null || enclClass == null) {
+			return false;
+		}
+		// the inner name and access were already checked by the nester
+		// anonymous class may have an enclosing method, they may not
+		// inner classes NEVER have an enclosing method
+		// local classes ALWAYS have an enclosing method
+		if (type == NestType.INNER && enclMethod != null) {
+			return false;
+		}
+		if (type == NestType.LOCAL && enclMethod == null) {
+			return false;
+		}
+
+		// only accept each class once
+		// after all, one class cannot be nested into multiple places
+		if (nests.containsKey(clazz)) {
+			Map<ClassNode, ClassNest> referencedNests = nests.get(clazz);
+
+			if (referencedNests.containsKey(clazz)) {
+				return false;
+			}
+		}
+
+		ClassNest nest = new ClassNest(type, clazz, enclClass, enclMethod, innerName, innerAccess);
+
+		addNestReference(clazz, nest);
+		addNestReference(enclClass, nest);
+
+		return true;
+	}
+
+	private void addNestReference(ClassNode clazz, ClassNest nest) {
+		nests.computeIfAbsent(clazz, key -> new LinkedHashMap<>()).put(nest.clazz, nest);
+	}
+
+	private void applyNests() {
+		Path tmp1 = null;
+		Path tmp2 = null;
+		Path tmp3 = null;
+
+		try {
+			// parent dirs might not yet exist
+			Files.createDirectories(dst.getParent());
+
+			if (options.remap) {
+				tmp1 = Files.createTempFile("tmp1", ".jar");
+				tmp2 = Files.createTempFile("tmp2", ".jar");
+				tmp3 = Files.createTempFile("tmp3", ".jar");
+
+				// TinyRemapper does not like it when the file already exists
+				Files.delete(tmp3);
+
+				Map<String, String> renames = collectRenames();
+
+				// only classes that reference renamed classes need remapping,
+				// all others are passed through to the output as they are
+				applyNests(src, tmp1, tmp2, renames);
+				remapJar(tmp1, tmp3, renames);
+				// TinyRemapper shuffles the classes
+				writeOutput(src, dst, tmp3, tmp2); // also copies over non-class files
+
+				if (options.verify) {
+					// passed through classes too, as they must
+					// not reference any renamed class either
+					verify(renames, true);
+				}
+			} else {
+				tmp1 = Files.createTempFile("tmp", ".jar");
+
+				applyNests(src, tmp1, null, null);
+				writeOutput(src, dst, tmp1); // copy over non-class files
+
+				if (options.verify) {
+					verify(Collections.emptyMap(), false);
+				}
+			}
+
+			if (!options.silent) {
+				System.out.println("Done!");
+			}
+		} catch (CancellationException e) {
+			// output is only moved into place once it is complete
+			if (!options.silent) {
+				System.out.println("Cancelled!");
+			}
+
+			throw e;
+		} catch (IOException e) {
+			throw new NesterException("could not nest jar", e);
+		} finally {
+			deleteIfExists(tmp1);
+			deleteIfExists(tmp2);
+			deleteIfExists(tmp3);
+		}
+	}
+
+	/**
+	 * Verify the written output. Unless all classes are to be checked,
+	 * only the classes that were nested or remapped are checked.
+	 */
+	private void verify(Map<String, String> renames, boolean all) {
+		checkCancelled();
+
+		Set<String> classNames = new LinkedHashSet<>();
+
+		if (all) {
+			for (ClassNode c : jar.getClasses()) {
+				classNames.add(c.name);
+			}
+		} else {
+			for (ClassNode c : nests.keySet()) {
+				classNames.add(c.name);
+			}
+		}
+
+		// look up the new class names up front
+		// as the remap cache is not thread-safe
+		List<String> newClassNames = new ArrayList<>();
+
+		for (String className : classNames) {
+			newClassNames.add(options.remap ? remap(className) : className);
+		}
+
+		new NestingVerifier(options, dst, renames).verify(newClassNames, progress);
+	}
+
+	private void deleteIfExists(Path path) {
+		if (path != null) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				if (!options.silent) {
+					System.out.println("Could not delete " + path + "...");
+				}
+			}
+		}
+	}
+
+	private void checkCancelled() {
+		if (cancelled.getAsBoolean()) {
+			throw new CancellationException("nesting was cancelled");
+		}
+	}
+
+	/**
+	 * Apply the nests to the classes in the given source jar. If renames are
+	 * given, classes that are renamed or that reference renamed classes are
+	 * written to the remap jar, and all other classes to the pass-through jar.
+	 * Otherwise all classes are written to the remap jar.
+	 */
+	private void applyNests(Path src, Path remapDst, Path passThroughDst, Map<String, String> renames) {
+		EntryBuffers buffers = EntryBuffers.get();
+
+		int totalClasses = jar.getClasses().size();
+		int classes = 0;
+
+		try (ClassOutput out = new ClassOutput(remapDst, passThroughDst, renames)) {
+			for (ClassNode newClass : jar.getNewClasses()) {
+				if (!classFilter.test(newClass.name)) {
+					continue;
+				}
+
+				checkCancelled();
+
+				JarEntry entry = new JarEntry(newClass.name + ".class");
+				byte[] bytes = writeNewClass(nester, newClass);
+				classBytes += bytes.length;
+
+				out.write(entry.getName(), bytes);
+
+				progress.progress(Stage.APPLY, ++classes, totalClasses, classBytes);
+			}
+
+			// like the source jar, keep the first of any duplicate entries
+			Set<String> entryNames = new HashSet<>();
+
+			try (JarInputStream jis = new JarInputStream(new FileInputStream(src.toFile()))) {
+				for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
+					if (entry.getName().endsWith(".class")) {
+						String className = entry.getName().substring(0, entry.getName().length() - ".class".length());
+
+						if (!classFilter.test(className) || !entryNames.add(entry.getName())) {
+							continue;
+						}
+
+						checkCancelled();
+
+						int length = buffers.read(jis);
+						ClassReader reader = new ClassReader(buffers.entry(), 0, length);
+						ClassWriter writer = new ClassWriter(reader, 0);
+						ClassVisitor visitor = nester.visitor(writer);
+
+						reader.accept(visitor, 0);
+
+						byte[] bytes = writer.toByteArray();
+						classBytes += bytes.length;
+
+						out.write(entry.getName(), bytes);
+
+						progress.progress(Stage.APPLY, ++classes, totalClasses, classBytes);
+					}
+				}
+			}
+
+			if (!options.silent) {
+				if (renames == null) {
+					System.out.println("Applied nests...");
+				} else {
+					System.out.println("Applied nests, " + remapClasses + " classes need remapping...");
+				}
+			}
+		} catch (IOException e) {
+			throw new NesterException("could not apply nests to jar", e);
+		}
+	}
+
+	/**
+	 * Write a class file for a class generated through {@link SourceJar#newClass}.
+	 */
+	static byte[] writeNewClass(ClassNester nester, ClassNode newClass) {
+		ClassWriter writer = new ClassWriter(0);
+		ClassVisitor visitor = nester.visitor(writer);
+
+		visitor.visit(
+			newClass.version,
+			newClass.access,
+			newClass.name,
+			null,
+			newClass.superName,
+			null
+		);
+		visitor.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private Map<String, String> collectRenames() {
+		mappings.clear();
+
+		Map<String, String> renames = new HashMap<>();
+
+		for (ClassNode clazz : nests.keySet()) {
+			String oldName = clazz.name;
+			String newName = remap(clazz.name);
+
+			if (!newName.equals(oldName)) {
+				renames.put(oldName, newName);
+			}
+		}
+
+		return renames;
+	}
+
+	private void remapJar(Path src, Path dst, Map<String, String> renames) {
+		checkCancelled();
+
+		if (options.heapBudget >= 0 && remapClassBytes > options.heapBudget) {
+			streamRemapJar(src, dst, renames);
+		} else {
+			TinyRemapper remapper = TinyRemapper.newRemapper().withMappings(ma -> {
+				for (Map.Entry<String, String> rename : renames.entrySet()) {
+					ma.acceptClass(rename.getKey(), rename.getValue());
+				}
+			}).build();
+
+			try (OutputConsumerPath oc = new OutputConsumerPath.Builder(dst).build()) {
+				remapper.readInputs(src);
+				remapper.apply(oc);
+			} catch (IOException e) {
+				throw new NesterException("could not remap jar", e);
+			} finally {
+				remapper.finish();
+			}
+
+			// TinyRemapper remaps all classes in one go
+			progress.progress(Stage.REMAP, remapClasses, remapClasses, remapClassBytes);
+		}
+
+		if (!options.silent) {
+			System.out.println("Remapped nested classes...");
+		}
+	}
+
+	private void streamRemapJar(Path src, Path dst, Map<String, String> renames) {
+		// only class names are remapped, so each class can be
+		// remapped on its own without knowing the rest of the jar
+		Remapper remapper = new SimpleRemapper(renames);
+		EntryBuffers buffers = EntryBuffers.get();
+
+		int totalClasses = remapClasses;
+		int classes = 0;
+		long bytes = 0;
+
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(dst.toFile()))) {
+			try (JarInputStream jis = new JarInputStream(new FileInputStream(src.toFile()))) {
+				for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
+					if (entry.getName().endsWith(".class")) {
+						checkCancelled();
+
+						int length = buffers.read(jis);
+						ClassReader reader = new ClassReader(buffers.entry(), 0, length);
+						ClassWriter writer = new ClassWriter(0);
+						ClassVisitor visitor = new ClassRemapper(writer, remapper);
+
+						reader.accept(visitor, 0);
+
+						byte[] classBytes = writer.toByteArray();
+						bytes += classBytes.length;
+
+						jos.putNextEntry(new JarEntry(remapper.mapType(reader.getClassName()) + ".class"));
+						jos.write(classBytes);
+						jos.flush();
+						jos.closeEntry();
+
+						progress.progress(Stage.REMAP, ++classes, totalClasses, bytes);
+					}
+				}
+			}
+
+			jos.finish();
+		} catch (IOException e) {
+			throw new NesterException("could not remap jar", e);
+		}
+	}
+
+	private String remap(String className) {
+		String mapping = mappings.get(className);
+
+		if (mapping == null) {
+			mapping = map(className);
+			mappings.put(className, mapping);
+		}
+
+		return mapping;
+	}
+
+	private String map(String className) {
+		ClassNode clazz = jar.getClass(className);
+
+		if (clazz == null) {
+			return className;
+		}
+
+		Map<ClassNode, ClassNest> referencedNests = nests.get(clazz);
+
+		if (referencedNests == null) {
+			return className;
+		}
+
+		ClassNest nest = referencedNests.get(clazz);
+
+		if (nest == null) {
+			return className;
+		}
+
+		return remap(nest.enclClass.name) + "$" + nest.innerName;
+	}
+
+	private void writeOutput(Path src, Path dst, Path... nestedSrcs) throws IOException {
+		if (options.directory) {
+			writeDirectory(src, dst, nestedSrcs);
+		} else {
+			// the jar is written next to the destination and moved into
+			// place once it is complete, so that a cancelled or failed job
+			// never leaves a partial jar behind or removes an earlier one
+			Path tmp = Files.createTempFile(dst.toAbsolutePath().getParent(), dst.getFileName().toString(), ".tmp");
+
+			try {
+				sortJar(src, tmp, nestedSrcs);
+				moveIntoPlace(tmp, dst);
+			} finally {
+				deleteIfExists(tmp);
+			}
+		}
+	}
+
+	private static void moveIntoPlace(Path src, Path dst) throws IOException {
+		try {
+			Files.move(src, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void sortJar(Path src, Path dst, Path... nestedSrcs) {
+		EntryBuffers buffers = EntryBuffers.get();
+
+		int totalClasses = jar.getClasses().size();
+		int classes = 0;
+		long bytes = 0;
+
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(dst.toFile()))) {
+			// keep the first of any duplicate entries
+			Set<String> entryNames = new HashSet<>();
+
+			try (JarInputStream jis = new JarInputStream(new FileInputStream(src.toFile()))) {
+				for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
+					if (!entry.getName().endsWith(".class")) {
+						checkCancelled();
+
+						// the index of an already nested jar is replaced
+						if (options.index && entry.getName().equals(NestingIndex.ENTRY_NAME)) {
+							continue;
+						}
+						if (!entryNames.add(entry.getName())) {
+							continue;
+						}
+
+						jos.putNextEntry(new JarEntry(entry.getName()));
+						buffers.copy(jis, jos);
+						jos.flush();
+						jos.closeEntry();
+					}
+				}
+			}
+
+			if (!options.silent) {
+				System.out.println("Moved over non-class files...");
+			}
+
+			try (NestedJars nestedSrcJars = new NestedJars(nestedSrcs)) {
+				for (ClassNode c : jar.getClasses()) {
+					checkCancelled();
+
+					String entryName = (options.remap ? remap(c.name) : c.name) + ".class";
+					JarFile nestedSrcJar = nestedSrcJars.find(entryName);
+					JarEntry entry = nestedSrcJar.getJarEntry(entryName);
+
+					try (InputStream jis = nestedSrcJar.getInputStream(entry)) {
+						jos.putNextEntry(new JarEntry(entryName));
+						bytes += buffers.copy(jis, jos);
+						jos.flush();
+						jos.closeEntry();
+					}
+
+					progress.progress(Stage.WRITE, ++classes, totalClasses, bytes);
+				}
+			}
+
+			if (!options.silent) {
+				System.out.println("Sorted class files...");
+			}
+
+			if (options.index) {
+				jos.putNextEntry(new JarEntry(NestingIndex.ENTRY_NAME));
+				jos.write(writeIndex());
+				jos.flush();
+				jos.closeEntry();
+			}
+
+			jos.finish();
+		} catch (IOException e) {
+			throw new NesterException("could not sort jar");
+		}
+	}
+
+	private void writeDirectory(Path src, Path dst, Path... nestedSrcs) {
+		Path root = dst.toAbsolutePath().normalize();
+		Path staging = null;
+
+		int totalClasses = jar.getClasses().size();
+		AtomicInteger classes = new AtomicInteger();
+		AtomicLong bytes = new AtomicLong();
+		AtomicInteger skipped = new AtomicInteger();
+
+		Set<Path> outputFiles = ConcurrentHashMap.newKeySet();
+
+		try (JarFile srcJar = new JarFile(src.toFile()); NestedJars nestedSrcJars = new NestedJars(nestedSrcs)) {
+			// changed files are written to a staging directory first and
+			// only moved into the output once all of them are written, so
+			// that a cancelled or failed job leaves the output untouched
+			staging = Files.createTempDirectory(root.getParent(), root.getFileName() + "-");
+
+			Path stagingRoot = staging;
+			// each file is written once, even if its entry is duplicated
+			Set<String> resources = new LinkedHashSet<>();
+
+			for (Enumeration<JarEntry> entries = srcJar.entries(); entries.hasMoreElements();) {
+				String name = entries.nextElement().getName();
+
+				// the jar output reads through a JarInputStream,
+				// which leaves out the manifest, so do the same here
+				if (!name.endsWith("/") && !name.endsWith(".class") && !name.equalsIgnoreCase(JarFile.MANIFEST_NAME)
+					&& !(options.index && name.equals(NestingIndex.ENTRY_NAME)) && !name.equals(FILE_LIST)) {
+					resources.add(name);
+				}
+			}
+
+			resources.parallelStream().forEach(name -> {
+				checkCancelled();
+
+				if (!writeFile(srcJar, name, root, stagingRoot, outputFiles)) {
+					skipped.incrementAndGet();
+				}
+			});
+
+			if (!options.silent) {
+				System.out.println("Moved over non-class files...");
+			}
+
+			// the remap cache is not thread-safe, so
+			// look up the new class names up front
+			List<String> classEntries = new ArrayList<>();
+
+			for (ClassNode c : jar.getClasses()) {
+				classEntries.add((options.remap ? remap(c.name) : c.name) + ".class");
+			}
+
+			classEntries.parallelStream().forEach(entryName -> {
+				checkCancelled();
+
+				JarFile nestedSrcJar = nestedSrcJars.find(entryName);
+
+				if (!writeFile(nestedSrcJar, entryName, root, stagingRoot, outputFiles)) {
+					skipped.incrementAndGet();
+				}
+
+				long written = bytes.addAndGet(nestedSrcJar.getJarEntry(entryName).getSize());
+
+				synchronized (progress) {
+					progress.progress(Stage.WRITE, classes.incrementAndGet(), totalClasses, written);
+				}
+			});
+
+			if (options.index) {
+				Path file = root.resolve(NestingIndex.ENTRY_NAME);
+				byte[] index = writeIndex();
+
+				outputFiles.add(file);
+
+				if (!Files.isRegularFile(file) || !Arrays.equals(index, Files.readAllBytes(file))) {
+					Path stagedFile = staging.resolve(NestingIndex.ENTRY_NAME);
+
+					Files.createDirectories(stagedFile.getParent());
+					Files.write(stagedFile, index);
+				}
+			}
+
+			Set<String> previousFiles = readFileList(root);
+			Set<String> files = new TreeSet<>();
+
+			for (Path file : outputFiles) {
+				files.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+			}
+
+			if (!files.equals(previousFiles)) {
+				writeFileList(staging, files);
+			}
+
+			checkCancelled();
+
+			// from here on the output is changed, so the job
+			// can no longer be cancelled
+			Files.createDirectories(root);
+
+			try (Stream<Path> stagedFiles = Files.walk(staging)) {
+				for (Path stagedFile : (Iterable<Path>)stagedFiles::iterator) {
+					if (Files.isRegularFile(stagedFile)) {
+						Path file = root.resolve(staging.relativize(stagedFile).toString());
+
+						Files.createDirectories(file.getParent());
+						moveIntoPlace(stagedFile, file);
+					}
+				}
+			}
+
+			// remove files that were renamed or removed since the last
+			// time output was written to this directory, but leave any
+			// files that were not written by nester alone
+			for (String name : previousFiles) {
+				if (!files.contains(name)) {
+					Path file = root.resolve(name).normalize();
+
+					if (file.startsWith(root) && Files.isRegularFile(file)) {
+						Files.delete(file);
+					}
+				}
+			}
+
+			if (!options.silent) {
+				System.out.println("Wrote class files, " + skipped.get() + " files were unchanged...");
+			}
+		} catch (UncheckedIOException e) {
+			throw new NesterException("could not write directory", e.getCause());
+		} catch (IOException e) {
+			throw new NesterException("could not write directory", e);
+		} finally {
+			deleteRecursively(staging);
+		}
+	}
+
+	/**
+	 * Read the list of files written to the given output directory by
+	 * the last run, or return an empty set if there is no list.
+	 */
+	static Set<String> readFileList(Path root) throws IOException {
+		Path file = root.resolve(FILE_LIST);
+		Set<String> files = new TreeSet<>();
+
+		if (Files.isRegularFile(file)) {
+			try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				for (String line; (line = br.readLine()) != null;) {
+					if (!line.isEmpty()) {
+						files.add(line);
+					}
+				}
+			}
+		}
+
+		return files;
+	}
+
+	static void writeFileList(Path root, Collection<String> files) throws IOException {
+		Path file = root.resolve(FILE_LIST);
+
+		Files.createDirectories(file.getParent());
+
+		try (BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (String name : files) {
+				bw.write(name);
+				bw.newLine();
+			}
+		}
+	}
+
+	private void deleteRecursively(Path dir) {
+		if (dir != null && Files.exists(dir)) {
+			List<Path> paths = new ArrayList<>();
+
+			try (Stream<Path> files = Files.walk(dir)) {
+				files.forEach(paths::add);
+			} catch (IOException e) {
+			}
+
+			// delete the contents of each directory before the directory itself
+			Collections.reverse(paths);
+			paths.forEach(this::deleteIfExists);
+		}
+	}
+
+	/**
+	 * Collect the nesting index from the accepted nests.
+	 */
+	private NestingIndex collectIndex() {
+		NestingIndex index = new NestingIndex();
+		// the enclosing method is looked up by its descriptor,
+		// which must name its classes by their new names too
+		Remapper remapper = new Remapper() {
+
+			@Override
+			public String map(String className) {
+				return remap(className);
+			}
+		};
+
+		for (Map.Entry<ClassNode, Map<ClassNode, ClassNest>> entry : nests.entrySet()) {
+			ClassNode clazz = entry.getKey();
+			ClassNest nest = entry.getValue().get(clazz);
+
+			if (nest == null) {
+				continue;
+			}
+
+			List<String> outerClasses = new ArrayList<>();
+			Set<ClassNode> visited = new HashSet<>();
+
+			for (ClassNest outerNest = nest; outerNest != null && visited.add(outerNest.enclClass);) {
+				ClassNode outerClass = outerNest.enclClass;
+				outerClasses.add(options.remap ? remap(outerClass.name) : outerClass.name);
+
+				Map<ClassNode, ClassNest> referencedNests = nests.get(outerClass);
+				outerNest = (referencedNests == null) ? null : referencedNests.get(outerClass);
+			}
+
+			index.add(new NestingIndex.Entry(
+				options.remap ? remap(clazz.name) : clazz.name,
+				clazz.name,
+				nest.type,
+				Collections.unmodifiableList(outerClasses),
+				nest.enclMethod == null ? null : nest.enclMethod.name,
+				nest.enclMethod == null ? null : (options.remap ? remapper.mapMethodDesc(nest.enclMethod.desc) : nest.enclMethod.desc)
+			));
+		}
+
+		return index;
+	}
+
+	byte[] writeIndex() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+		try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+			collectIndex().write(bw);
+		}
+
+		return os.toByteArray();
+	}
+
+	/**
+	 * Write the given jar entry to a file in the given staging directory,
+	 * unless that file already exists in the output directory with the
+	 * same contents.
+	 * 
+	 * @return whether the file was written
+	 */
+	private boolean writeFile(JarFile jarFile, String entryName, Path root, Path staging, Set<Path> outputFiles) {
+		Path file = root.resolve(entryName).normalize();
+
+		if (!file.startsWith(root)) {
+			throw new NesterException("invalid entry name: " + entryName);
+		}
+
+		outputFiles.add(file);
+
+		try (InputStream is = jarFile.getInputStream(jarFile.getJarEntry(entryName))) {
+			EntryBuffers buffers = EntryBuffers.get();
+			int length = buffers.read(is);
+
+			if (Files.isRegularFile(file) && Files.size(file) == length) {
+				byte[] existing = Files.readAllBytes(file);
+				boolean changed = false;
+
+				for (int i = 0; i < length && !changed; i++) {
+					changed = existing[i] != buffers.entry()[i];
+				}
+
+				if (!changed) {
+					return false;
+				}
+			}
+
+			Path stagedFile = staging.resolve(entryName).normalize();
+
+			Files.createDirectories(stagedFile.getParent());
+
+			try (OutputStream os = Files.newOutputStream(stagedFile)) {
+				os.write(buffers.entry(), 0, length);
+			}
+
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes classes to either the remap jar or the pass-through jar,
+	 * depending on whether they are affected by any renames.
+	 */
+	private class ClassOutput implements Closeable {
+
+		private final JarOutputStream remapJar;
+		private final JarOutputStream passThroughJar;
+		private final Map<String, String> renames;
+
+		private ClassOutput(Path remapDst, Path passThroughDst, Map<String, String> renames) throws IOException {
+			this.remapJar = new JarOutputStream(new FileOutputStream(remapDst.toFile()));
+			this.passThroughJar = (passThroughDst == null) ? null : new JarOutputStream(new FileOutputStream(passThroughDst.toFile()));
+			this.renames = renames;
+		}
+
+		public void write(String entryName, byte[] bytes) throws IOException {
+			JarOutputStream jos = remapJar;
+
+			if (renames != null) {
+				String name = references.add(bytes, 0, bytes.length, jar::hasClass);
+
+				if (!renames.containsKey(name) && !references.referencesAny(name, renames.keySet())) {
+					jos = passThroughJar;
+				}
+			}
+
+			if (jos == remapJar) {
+				remapClasses++;
+				remapClassBytes += bytes.length;
+			}
+
+			jos.putNextEntry(new JarEntry(entryName));
+			jos.write(bytes);
+			jos.flush();
+			jos.closeEntry();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				remapJar.finish();
+				remapJar.close();
+			} finally {
+				if (passThroughJar != null) {
+					passThroughJar.finish();
+					passThroughJar.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The jars that together hold all nested classes.
+	 */
+	private static class NestedJars implements Closeable {
+
+		private final JarFile[] jars;
+
+		private NestedJars(Path... paths) throws IOException {
+			this.jars = new JarFile[paths.length];
+
+			try {
+				for (int i = 0; i < paths.length; i++) {
+					jars[i] = new JarFile(paths[i].toFile());
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the jar that holds the given entry.
+		 */
+		public JarFile find(String entryName) {
+			for (JarFile jar : jars) {
+				if (jar.getJarEntry(entryName) != null) {
+					return jar;
+				}
+			}
+
+			throw new NesterException("missing class file " + entryName);
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (JarFile jar : jars) {
+				if (jar != null) {
+					jar.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package net.ornithemc.nester;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import net.ornithemc.nester.ProgressListener.Stage;
+import net.ornithemc.nester.jar.EntryBuffers;
+
+/**
+ * Checks the classes of a nested jar or directory for the mistakes a
+ * bad nest can cause, which would otherwise only show up later in a
+ * decompiler or at runtime.
+ */
+class NestingVerifier {
+
+	private final Nester.Options options;
+	private final Path dst;
+	private final Set<String> oldNames;
+
+	private final Map<String, ClassNode> classes;
+	private JarFile jarFile;
+
+	/**
+	 * @param renames the renames that were applied to the classes,
+	 *                none of which may still be referenced by their
+	 *                old names
+	 */
+	NestingVerifier(Nester.Options options, Path dst, Map<String, String> renames) {
+		this.options = options;
+		this.dst = dst;
+		this.oldNames = new HashSet<>(renames.keySet());
+
+		// a class can take the old name of another class
+		this.oldNames.removeAll(renames.values());
+
+		this.classes = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Verify the given classes, on multiple threads.
+	 *
+	 * @throws NesterException if any problems were found
+	 */
+	void verify(Collection<String> classNames, ProgressListener progress) {
+		List<String> problems = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger classes = new AtomicInteger();
+
+		try {
+			if (!options.directory) {
+				jarFile = new JarFile(dst.toFile());
+			}
+
+			try {
+				classNames.parallelStream().forEach(className -> {
+					verify(className, problems);
+
+					synchronized (progress) {
+						progress.progress(Stage.VERIFY, classes.incrementAndGet(), classNames.size(), 0);
+					}
+				});
+			} finally {
+				if (jarFile != null) {
+					jarFile.close();
+				}
+			}
+		} catch (IOException | UncheckedIOException e) {
+			throw new NesterException("could not verify nested jar", e);
+		}
+
+		if (!problems.isEmpty()) {
+			Collections.sort(problems);
+
+			if (!options.silent) {
+				for (String problem : problems) {
+					System.out.println("  " + problem);
+				}
+			}
+
+			throw new NesterException("nested jar failed verification, " + problems.size() + " problems found, first: " + problems.get(0));
+		}
+
+		if (!options.silent) {
+			System.out.println("Verified " + classNames.size() + " classes...");
+		}
+	}
+
+	private void verify(String className, List<String> problems) {
+		byte[] bytes = read(className);
+
+		if (bytes == null) {
+			problems.add(className + ": class file is missing");
+			return;
+		}
+
+		try {
+			new ClassReader(bytes).accept(new CheckClassAdapter(new ClassNode(), false), 0);
+		} catch (RuntimeException e) {
+			problems.add(className + ": " + e.getMessage());
+		}
+
+		ClassNode clazz = getClass(className);
+
+		if (clazz.outerClass != null) {
+			ClassNode outerClass = getClass(clazz.outerClass);
+
+			if (outerClass == null) {
+				problems.add(className + ": enclosing class " + clazz.outerClass + " is missing");
+			} else if (clazz.outerMethod != null && !hasMethod(outerClass, clazz.outerMethod, clazz.outerMethodDesc)) {
+				problems.add(className + ": enclosing method " + clazz.outerClass + "." + clazz.outerMethod + clazz.outerMethodDesc + " is missing");
+			}
+		}
+
+		for (InnerClassNode innerClass : clazz.innerClasses) {
+			if (innerClass.name.equals(className)) {
+				if (options.remap && innerClass.outerName != null && innerClass.innerName != null) {
+					String expectedName = innerClass.outerName + "$" + innerClass.innerName;
+
+					if (!className.equals(expectedName)) {
+						problems.add(className + ": inner name " + innerClass.innerName + " does not match the class name " + className);
+					}
+				}
+				if (innerClass.outerName != null) {
+					verifyInnerClass(className, innerClass, innerClass.outerName, problems);
+				} else if (clazz.outerClass != null) {
+					// anonymous and local classes are listed by their enclosing class
+					verifyInnerClass(className, innerClass, clazz.outerClass, problems);
+				}
+			} else {
+				verifyInnerClass(className, innerClass, innerClass.name, problems);
+			}
+		}
+
+		if (!oldNames.isEmpty()) {
+			Set<String> refs = new TreeSet<>();
+
+			try {
+				// a remapper that changes nothing still sees every class
+				// name, in descriptors and signatures too
+				new ClassReader(bytes).accept(new ClassRemapper(new ClassNode(), new Remapper() {
+
+					@Override
+					public String map(String internalName) {
+						if (oldNames.contains(internalName)) {
+							refs.add(internalName);
+						}
+
+						return internalName;
+					}
+				}), 0);
+			} catch (RuntimeException e) {
+				// already reported by the check above
+			}
+
+			if (!refs.isEmpty()) {
+				problems.add(className + ": references old class names " + refs);
+			}
+		}
+	}
+
+	/**
+	 * Check that the InnerClasses entry of the given class matches
+	 * the entry for the same inner class in the other given class.
+	 */
+	private void verifyInnerClass(String className, InnerClassNode innerClass, String otherClassName, List<String> problems) {
+		ClassNode otherClass = getClass(otherClassName);
+
+		// library classes cannot be checked
+		if (otherClass == null) {
+			return;
+		}
+
+		for (InnerClassNode otherInnerClass : otherClass.innerClasses) {
+			if (otherInnerClass.name.equals(innerClass.name)) {
+				if (!equals(innerClass.outerName, otherInnerClass.outerName)
+					|| !equals(innerClass.innerName, otherInnerClass.innerName)
+					|| innerClass.access != otherInnerClass.access) {
+					problems.add(className + ": InnerClasses entry for " + innerClass.name + " does not match the entry in " + otherClassName);
+				}
+
+				return;
+			}
+		}
+
+		problems.add(className + ": InnerClasses entry for " + innerClass.name + " is missing from " + otherClassName);
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	private static boolean hasMethod(ClassNode clazz, String name, String desc) {
+		for (MethodNode method : clazz.methods) {
+			if (method.name.equals(name) && method.desc.equals(desc)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private ClassNode getClass(String className) {
+		return classes.computeIfAbsent(className, key -> {
+			byte[] bytes = read(key);
+
+			if (bytes == null) {
+				return null;
+			}
+
+			ClassNode clazz = new ClassNode();
+			new ClassReader(bytes).accept(clazz, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+			return clazz;
+		});
+	}
+
+	private byte[] read(String className) {
+		String entryName = className + ".class";
+
+		try {
+			if (jarFile == null) {
+				Path file = dst.resolve(entryName);
+				return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+			}
+
+			JarEntry entry = jarFile.getJarEntry(entryName);
+
+			if (entry == null) {
+				return null;
+			}
+
+			EntryBuffers buffers = EntryBuffers.get();
+
+			try (InputStream is = jarFile.getInputStream(entry)) {
+				int length = buffers.read(is);
+				byte[] bytes = new byte[length];
+				System.arraycopy(buffers.entry(), 0, bytes, 0, length);
+
+				return bytes;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package net.ornithemc.nester;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nests;
+import net.ornithemc.nester.nest.NestsDiff;
+
+/**
+ * Watches a nests file and nests a jar again each time that file
+ * is changed. The source jar is only read once. When writing to a
+ * directory, the nested classes are kept in memory, and only the
+ * class files that change are written again.
+ */
+public class NestsWatcher {
+
+	// editors often save a file in several steps,
+	// so wait for those to finish before reloading
+	private static final long SETTLE_MILLIS = 100;
+
+	/**
+	 * Apply the nests in the given file to the jar at the given source
+	 * path and write it to the given destination path, then do it again
+	 * each time the nests file changes. This method blocks until the
+	 * calling thread is interrupted.
+	 */
+	public static void watch(Nester.Options options, Path src, Path dst, Path nestsPath) {
+		if (!Files.isReadable(src) || !Files.isRegularFile(src)) {
+			throw new NesterException("invalid source path: " + src);
+		}
+		if (!Files.isReadable(nestsPath) || !Files.isRegularFile(nestsPath)) {
+			throw new NesterException("invalid nests path");
+		}
+
+		// each version of the nests shares the names of the jar,
+		// but holds its own names apart, to be dropped with it
+		SymbolTable symbols = new SymbolTable();
+		SourceJar jar = new SourceJar(src, symbols, options.parallel);
+		IncrementalNester incremental = options.directory ? new IncrementalNester(options, src, dst, jar) : null;
+
+		Nests nests = Nests.of(nestsPath, symbols.scope());
+
+		nest(options, jar, src, dst, nests, incremental);
+
+		Path dir = nestsPath.toAbsolutePath().getParent();
+		Path fileName = nestsPath.getFileName();
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+			System.out.println("Watching " + nestsPath + " for changes...");
+
+			while (true) {
+				if (!awaitChange(watcher, fileName)) {
+					continue;
+				}
+
+				Nests newNests;
+
+				try {
+					newNests = Nests.of(nestsPath, symbols.scope());
+				} catch (NesterException e) {
+					System.out.println("Could not reload nests: " + e.getMessage());
+					continue;
+				}
+
+				NestsDiff diff = NestsDiff.of(nests, newNests);
+
+				if (diff.isEmpty()) {
+					continue;
+				}
+
+				System.out.println("Nests changed: " + diff.getAdded().size() + " added, " + diff.getRemoved().size() + " removed, " + diff.getChanged().size() + " changed...");
+
+				nests = newNests;
+
+				if (incremental != null && incremental.isInitialized()) {
+					update(incremental, dst, nests);
+				} else {
+					nest(options, jar, src, dst, nests, incremental);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new NesterException("could not watch nests file", e);
+		}
+	}
+
+	private static boolean awaitChange(WatchService watcher, Path fileName) throws InterruptedException {
+		WatchKey key = watcher.take();
+		boolean changed = false;
+
+		do {
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (fileName.equals(event.context())) {
+					changed = true;
+				}
+			}
+
+			key.reset();
+		} while (changed && (key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+		return changed;
+	}
+
+	private static void nest(Nester.Options options, SourceJar jar, Path src, Path dst, Nests nests, IncrementalNester incremental) {
+		long start = System.currentTimeMillis();
+
+		try {
+			jar.reset();
+			Nester.of(options, nests).apply(jar, src, dst, ProgressListener.NONE, () -> false);
+
+			if (incremental != null) {
+				incremental.init(nests);
+			}
+		} catch (NesterException e) {
+			System.out.println("Could not nest jar: " + e.getMessage());
+			return;
+		}
+
+		System.out.println("Nested " + dst + " in " + (System.currentTimeMillis() - start) + "ms...");
+	}
+
+	private static void update(IncrementalNester incremental, Path dst, Nests nests) {
+		long start = System.currentTimeMillis();
+		int files;
+
+		try {
+			files = incremental.update(nests);
+		} catch (NesterException e) {
+			System.out.println("Could not nest jar: " + e.getMessage());
+			return;
+		}
+
+		System.out.println("Updated " + files + " class files in " + dst + " in " + (System.currentTimeMillis() - start) + "ms...");
+	}
+}
@@ -0,0 +1,23 @@
+package net.ornithemc.nester;
+
+/**
+ * Receives progress updates while a jar is being nested.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+	ProgressListener NONE = (stage, classes, totalClasses, bytes) -> { };
+
+	/**
+	 * Called after each class that is processed in the given stage.
+	 * 
+	 * @param classes the number of classes processed so far in this stage
+	 * @param totalClasses the number of classes this stage will process
+	 * @param bytes the number of class bytes written so far in this stage
+	 */
+	void progress(Stage stage, int classes, int totalClasses, long bytes);
+
+	enum Stage {
+		APPLY, REMAP, WRITE, VERIFY
+	}
+}
@@ -0,0 +1,75 @@
+package net.ornithemc.nester;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one canonical instance of each class and member name,
+ * so that names read from nests files and from class files are
+ * shared rather than duplicated.
+ * <p>
+ * A table only ever grows, so names that are specific to one job
+ * should go into a {@link #scope() scoped} table, which can be
+ * dropped along with the job.
+ */
+public class SymbolTable {
+
+	private final SymbolTable parent;
+	private final Map<String, String> symbols;
+
+	public SymbolTable() {
+		this(null);
+	}
+
+	private SymbolTable(SymbolTable parent) {
+		this.parent = parent;
+		this.symbols = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns a new table that shares the names already held by this
+	 * table, but holds any other names on its own, leaving this table
+	 * unchanged.
+	 */
+	public SymbolTable scope() {
+		return new SymbolTable(this);
+	}
+
+	/**
+	 * Returns the canonical instance of the given name.
+	 */
+	public String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+
+		if (parent != null) {
+			String symbol = parent.get(name);
+
+			if (symbol != null) {
+				return symbol;
+			}
+		}
+
+		String symbol = symbols.putIfAbsent(name, name);
+		return symbol == null ? name : symbol;
+	}
+
+	private String get(String name) {
+		String symbol = symbols.get(name);
+		return (symbol == null && parent != null) ? parent.get(name) : symbol;
+	}
+
+	/**
+	 * Replaces each of the given names with its canonical instance.
+	 */
+	public String[] intern(String[] names) {
+		if (names != null) {
+			for (int i = 0; i < names.length; i++) {
+				names[i] = intern(names[i]);
+			}
+		}
+
+		return names;
+	}
+}
@@ -0,0 +1,94 @@
+package net.ornithemc.nester.jar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Per-thread buffers for reading and copying jar entries. They are
+ * reused for every entry, and every jar, that is processed on the
+ * same thread, so that steady-state processing does not allocate a
+ * new buffer for each entry.
+ * <p>
+ * This only covers reading and copying. Classes that are rewritten
+ * still get a new array each, from {@code ClassWriter#toByteArray},
+ * as ASM offers no way to write a class into a given buffer.
+ */
+public final class EntryBuffers {
+
+	/**
+	 * The entry buffer grows to fit larger entries, but is not retained
+	 * beyond this size, so that one large entry does not pin a large
+	 * buffer to its thread for as long as the thread lives.
+	 */
+	private static final int ENTRY_BUFFER_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<EntryBuffers> BUFFERS = ThreadLocal.withInitial(EntryBuffers::new);
+
+	/**
+	 * Returns the buffers of the current thread.
+	 */
+	public static EntryBuffers get() {
+		return BUFFERS.get();
+	}
+
+	private final byte[] copyBuffer;
+	private byte[] entryBuffer;
+
+	private EntryBuffers() {
+		this.copyBuffer = new byte[8192];
+		this.entryBuffer = new byte[ENTRY_BUFFER_SIZE];
+	}
+
+	/**
+	 * Read the rest of the given stream into the entry buffer.
+	 * The contents are valid until the next call to this method
+	 * on the same thread.
+	 * 
+	 * @return the number of bytes read
+	 */
+	public int read(InputStream is) throws IOException {
+		int length = 0;
+
+		// the previous entry is no longer needed
+		if (entryBuffer.length > ENTRY_BUFFER_SIZE) {
+			entryBuffer = new byte[ENTRY_BUFFER_SIZE];
+		}
+
+		for (int read; (read = is.read(entryBuffer, length, entryBuffer.length - length)) != -1;) {
+			length += read;
+
+			if (length == entryBuffer.length) {
+				entryBuffer = Arrays.copyOf(entryBuffer, 2 * entryBuffer.length);
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Returns the entry buffer, as filled by the last call to
+	 * {@link #read}.
+	 */
+	public byte[] entry() {
+		return entryBuffer;
+	}
+
+	/**
+	 * Copy the rest of the given input stream to the given output
+	 * stream.
+	 * 
+	 * @return the number of bytes copied
+	 */
+	public long copy(InputStream is, OutputStream os) throws IOException {
+		long length = 0;
+
+		for (int read; (read = is.read(copyBuffer)) > 0;) {
+			os.write(copyBuffer, 0, read);
+			length += read;
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,326 @@
+package net.ornithemc.nester.jar;
+
+/**
+ * A class file that is parsed only as far as its constant pool, its
+ * header and the declarations of its fields and methods, without
+ * building an ASM tree. Strings are decoded lazily, so the underlying
+ * buffer must not be changed while this class is in use.
+ */
+public class RawClass {
+
+	private static final int UTF8 = 1;
+	private static final int INTEGER = 3;
+	private static final int FLOAT = 4;
+	private static final int LONG = 5;
+	private static final int DOUBLE = 6;
+	private static final int CLASS = 7;
+	private static final int STRING = 8;
+	private static final int FIELD_REF = 9;
+	private static final int METHOD_REF = 10;
+	private static final int INTERFACE_METHOD_REF = 11;
+	private static final int NAME_AND_TYPE = 12;
+	private static final int METHOD_HANDLE = 15;
+	private static final int METHOD_TYPE = 16;
+	private static final int DYNAMIC = 17;
+	private static final int INVOKE_DYNAMIC = 18;
+	private static final int MODULE = 19;
+	private static final int PACKAGE = 20;
+
+	public static RawClass read(byte[] b) {
+		return read(b, 0, b.length);
+	}
+
+	public static RawClass read(byte[] b, int off, int len) {
+		if (len < 10 || readInt(b, off) != 0xCAFEBABE) {
+			throw new IllegalArgumentException("not a class file");
+		}
+
+		return new RawClass(b, off);
+	}
+
+	private final byte[] b;
+	private final int[] offsets;
+	private final String[] strings;
+
+	private final int access;
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+	private final int[] fields;
+	private final int[] methods;
+
+	private RawClass(byte[] b, int off) {
+		this.b = b;
+
+		int constantCount = readUnsignedShort(b, off + 8);
+
+		this.offsets = new int[constantCount];
+		this.strings = new String[constantCount];
+
+		int p = off + 10;
+
+		for (int i = 1; i < constantCount; i++) {
+			int tag = b[p];
+			// the offset of each entry points past its tag
+			offsets[i] = p + 1;
+
+			switch (tag) {
+			case UTF8:
+				p += 3 + readUnsignedShort(b, p + 1);
+				break;
+			case CLASS:
+			case STRING:
+			case METHOD_TYPE:
+			case MODULE:
+			case PACKAGE:
+				p += 3;
+				break;
+			case METHOD_HANDLE:
+				p += 4;
+				break;
+			case INTEGER:
+			case FLOAT:
+			case FIELD_REF:
+			case METHOD_REF:
+			case INTERFACE_METHOD_REF:
+			case NAME_AND_TYPE:
+			case DYNAMIC:
+			case INVOKE_DYNAMIC:
+				p += 5;
+				break;
+			case LONG:
+			case DOUBLE:
+				p += 9;
+				// these take up two slots in the constant pool
+				i++;
+				break;
+			default:
+				throw new IllegalArgumentException("unknown constant pool tag " + tag);
+			}
+		}
+
+		this.access = readUnsignedShort(b, p);
+		this.thisClass = readUnsignedShort(b, p + 2);
+		this.superClass = readUnsignedShort(b, p + 4);
+		this.interfaces = new int[readUnsignedShort(b, p + 6)];
+
+		p += 8;
+
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = readUnsignedShort(b, p);
+			p += 2;
+		}
+
+		this.fields = new int[readUnsignedShort(b, p)];
+		p = readMembers(p + 2, fields);
+		this.methods = new int[readUnsignedShort(b, p)];
+		p = readMembers(p + 2, methods);
+	}
+
+	private int readMembers(int p, int[] members) {
+		for (int i = 0; i < members.length; i++) {
+			members[i] = p;
+
+			int attributeCount = readUnsignedShort(b, p + 6);
+			p += 8;
+
+			for (int j = 0; j < attributeCount; j++) {
+				p += 6 + readInt(b, p + 2);
+			}
+		}
+
+		return p;
+	}
+
+	public int getAccess() {
+		return access;
+	}
+
+	public String getName() {
+		return getClass(thisClass);
+	}
+
+	public String getSuperName() {
+		return superClass == 0 ? null : getClass(superClass);
+	}
+
+	public String[] getInterfaces() {
+		String[] names = new String[interfaces.length];
+
+		for (int i = 0; i < interfaces.length; i++) {
+			names[i] = getClass(interfaces[i]);
+		}
+
+		return names;
+	}
+
+	public int getFieldCount() {
+		return fields.length;
+	}
+
+	public int getFieldAccess(int field) {
+		return readUnsignedShort(b, fields[field]);
+	}
+
+	public String getFieldName(int field) {
+		return getUtf8(readUnsignedShort(b, fields[field] + 2));
+	}
+
+	public String getFieldDesc(int field) {
+		return getUtf8(readUnsignedShort(b, fields[field] + 4));
+	}
+
+	public int getMethodCount() {
+		return methods.length;
+	}
+
+	public int getMethodAccess(int method) {
+		return readUnsignedShort(b, methods[method]);
+	}
+
+	public String getMethodName(int method) {
+		return getUtf8(readUnsignedShort(b, methods[method] + 2));
+	}
+
+	public String getMethodDesc(int method) {
+		return getUtf8(readUnsignedShort(b, methods[method] + 4));
+	}
+
+	/**
+	 * Returns the number of slots in the constant pool. Slot 0,
+	 * and the slots following long and double entries, are unused.
+	 */
+	public int getConstantCount() {
+		return offsets.length;
+	}
+
+	public boolean isUtf8(int index) {
+		return getTag(index) == UTF8;
+	}
+
+	public boolean isClass(int index) {
+		return getTag(index) == CLASS;
+	}
+
+	public boolean isMethodRef(int index) {
+		int tag = getTag(index);
+		return tag == METHOD_REF || tag == INTERFACE_METHOD_REF;
+	}
+
+	public String getUtf8(int index) {
+		String s = strings[index];
+
+		if (s == null) {
+			s = strings[index] = decodeUtf8(offsets[index]);
+		}
+
+		return s;
+	}
+
+	public String getClass(int index) {
+		return getUtf8(readUnsignedShort(b, offsets[index]));
+	}
+
+	/**
+	 * Returns the owner class of the field or method reference
+	 * at the given index.
+	 */
+	public String getMemberRefOwner(int index) {
+		return getClass(readUnsignedShort(b, offsets[index]));
+	}
+
+	public String getMemberRefName(int index) {
+		int nameAndType = readUnsignedShort(b, offsets[index] + 2);
+		return getUtf8(readUnsignedShort(b, offsets[nameAndType]));
+	}
+
+	public String getMemberRefDesc(int index) {
+		int nameAndType = readUnsignedShort(b, offsets[index] + 2);
+		return getUtf8(readUnsignedShort(b, offsets[nameAndType] + 2));
+	}
+
+	/**
+	 * Check whether any UTF8 entry in the constant pool starts with the
+	 * given prefix. The prefix must be ASCII. No strings are decoded.
+	 */
+	public boolean hasUtf8Prefix(String prefix) {
+		for (int i = 1; i < offsets.length; i++) {
+			if (isUtf8(i) && utf8StartsWith(offsets[i], prefix)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean utf8StartsWith(int offset, String prefix) {
+		int length = readUnsignedShort(b, offset);
+
+		if (length < prefix.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (b[offset + 2 + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check whether the UTF8 entry at the given index could be a
+	 * descriptor or signature that contains a class name, without
+	 * decoding it.
+	 */
+	public boolean utf8MayContainClassName(int index) {
+		int offset = offsets[index];
+		int length = readUnsignedShort(b, offset);
+
+		boolean hasClassStart = false;
+
+		for (int p = offset + 2, end = p + length; p < end; p++) {
+			if (b[p] == 'L') {
+				hasClassStart = true;
+			} else if (b[p] == ';' && hasClassStart) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private int getTag(int index) {
+		return index > 0 && index < offsets.length && offsets[index] > 0 ? b[offsets[index] - 1] : 0;
+	}
+
+	private String decodeUtf8(int offset) {
+		int length = readUnsignedShort(b, offset);
+		char[] chars = new char[length];
+		int charCount = 0;
+
+		// class files use modified UTF-8
+		for (int p = offset + 2, end = p + length; p < end; ) {
+			int c = b[p++] & 0xFF;
+
+			if ((c & 0x80) == 0) {
+				chars[charCount++] = (char)c;
+			} else if ((c & 0xE0) == 0xC0) {
+				chars[charCount++] = (char)(((c & 0x1F) << 6) + (b[p++] & 0x3F));
+			} else {
+				chars[charCount++] = (char)(((c & 0x0F) << 12) + ((b[p++] & 0x3F) << 6) + (b[p++] & 0x3F));
+			}
+		}
+
+		return new String(chars, 0, charCount);
+	}
+
+	private static int readUnsignedShort(byte[] b, int p) {
+		return ((b[p] & 0xFF) << 8) | (b[p + 1] & 0xFF);
+	}
+
+	private static int readInt(byte[] b, int p) {
+		return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) | ((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,279 @@
+package net.ornithemc.nester.jar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Maps each class to the classes it references, found by scanning
+ * the constant pool of its class file.
+ */
+public class ReferenceIndex {
+
+	private final Map<String, Set<String>> references;
+
+	public ReferenceIndex() {
+		this.references = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Scan the given class file and add its references to the index.
+	 * Only references accepted by the given filter are kept.
+	 * 
+	 * @return the name of the scanned class
+	 */
+	public String add(byte[] b, int off, int len, Predicate<String> filter) {
+		RawClass clazz = RawClass.read(b, off, len);
+		String name = clazz.getName();
+
+		references.put(name, scan(clazz, filter));
+
+		return name;
+	}
+
+	/**
+	 * Returns the classes referenced by the given class, or an
+	 * empty set if that class is not in the index.
+	 */
+	public Set<String> getReferences(String className) {
+		return Collections.unmodifiableSet(references.getOrDefault(className, Collections.emptySet()));
+	}
+
+	/**
+	 * Check whether the given class references any of the given classes.
+	 */
+	public boolean referencesAny(String className, Set<String> classNames) {
+		Set<String> refs = references.get(className);
+
+		if (refs == null) {
+			return false;
+		}
+
+		for (String name : refs) {
+			if (classNames.contains(name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Collect the names of all classes referenced by the given class.
+	 * This includes class constants, and class names in descriptors
+	 * and signatures, which are only referenced through UTF8 entries.
+	 * Descriptors and signatures are parsed in full, so that type
+	 * variables are not mistaken for class names, and inner class types
+	 * yield the names of the inner classes. Other UTF8 entries can only
+	 * yield some false names.
+	 */
+	public static Set<String> scan(RawClass clazz, Predicate<String> filter) {
+		Set<String> refs = new HashSet<>();
+
+		for (int i = 1; i < clazz.getConstantCount(); i++) {
+			if (clazz.isClass(i)) {
+				String name = clazz.getClass(i);
+
+				// array types are given as descriptors
+				if (name.charAt(0) == '[') {
+					scanSignature(name, refs, filter);
+				} else if (filter.test(name)) {
+					refs.add(name);
+				}
+			} else if (clazz.isUtf8(i) && clazz.utf8MayContainClassName(i)) {
+				scanSignature(clazz.getUtf8(i), refs, filter);
+			}
+		}
+
+		return refs;
+	}
+
+	private static void scanSignature(String signature, Set<String> refs, Predicate<String> filter) {
+		List<String> names = new ArrayList<>();
+
+		if (parseSignature(signature, names)) {
+			for (String name : names) {
+				if (filter.test(name)) {
+					refs.add(name);
+				}
+			}
+		} else {
+			// not a descriptor or signature, but look for class
+			// names anyway, as the cost of a false name is small
+			scanNames(signature, refs, filter);
+		}
+	}
+
+	private static void scanNames(String s, Set<String> refs, Predicate<String> filter) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == 'L') {
+				int end = i + 1;
+
+				while (end < s.length()) {
+					char chr = s.charAt(end);
+
+					if (chr == ';' || chr == '<') {
+						break;
+					}
+
+					end++;
+				}
+
+				String name = s.substring(i + 1, end);
+
+				if (filter.test(name)) {
+					refs.add(name);
+				}
+
+				i = end;
+			}
+		}
+	}
+
+	/**
+	 * Parse a field or method descriptor, or a class, field or method
+	 * signature, and collect the class names in it.
+	 * 
+	 * @return whether the whole string could be parsed
+	 */
+	private static boolean parseSignature(String s, List<String> names) {
+		int i = 0;
+
+		if (i < s.length() && s.charAt(i) == '<') {
+			i = parseTypeParameters(s, i + 1, names);
+		}
+		if (i >= 0 && i < s.length() && s.charAt(i) == '(') {
+			i++;
+
+			while (i >= 0 && i < s.length() && s.charAt(i) != ')') {
+				i = parseType(s, i, names);
+			}
+			if (i < 0 || i >= s.length()) {
+				return false;
+			}
+
+			i = parseType(s, i + 1, names);
+
+			// exceptions thrown
+			while (i >= 0 && i < s.length() && s.charAt(i) == '^') {
+				i = parseType(s, i + 1, names);
+			}
+		} else {
+			// a field type, or a super class followed by interfaces
+			do {
+				i = parseType(s, i, names);
+			} while (i >= 0 && i < s.length());
+		}
+
+		return i == s.length();
+	}
+
+	private static int parseTypeParameters(String s, int i, List<String> names) {
+		do {
+			int end = s.indexOf(':', i);
+
+			if (end <= i) {
+				return -1;
+			}
+
+			i = end;
+
+			// the class bound can be empty, the interface bounds cannot
+			while (i >= 0 && i < s.length() && s.charAt(i) == ':') {
+				i++;
+
+				if (i < s.length() && s.charAt(i) != ':' && s.charAt(i) != '>') {
+					i = parseType(s, i, names);
+				}
+			}
+		} while (i >= 0 && i < s.length() && s.charAt(i) != '>');
+
+		return (i < 0 || i >= s.length()) ? -1 : i + 1;
+	}
+
+	private static int parseType(String s, int i, List<String> names) {
+		if (i < 0 || i >= s.length()) {
+			return -1;
+		}
+
+		switch (s.charAt(i)) {
+		case 'Z':
+		case 'C':
+		case 'B':
+		case 'S':
+		case 'I':
+		case 'F':
+		case 'J':
+		case 'D':
+		case 'V':
+			return i + 1;
+		case '[':
+			return parseType(s, i + 1, names);
+		case 'T':
+			int end = s.indexOf(';', i);
+			return (end <= i + 1) ? -1 : end + 1;
+		case 'L':
+			return parseClassType(s, i + 1, names);
+		default:
+			return -1;
+		}
+	}
+
+	private static int parseClassType(String s, int i, List<String> names) {
+		String name = null;
+
+		while (i < s.length()) {
+			int start = i;
+
+			while (i < s.length() && ";<.".indexOf(s.charAt(i)) < 0) {
+				i++;
+			}
+			if (i == start || i >= s.length()) {
+				return -1;
+			}
+
+			// the inner class types of a parameterized outer class
+			// are given by their simple name
+			name = (name == null) ? s.substring(start, i) : name + "$" + s.substring(start, i);
+			names.add(name);
+
+			if (s.charAt(i) == '<') {
+				i = parseTypeArguments(s, i + 1, names);
+
+				if (i < 0 || i >= s.length()) {
+					return -1;
+				}
+			}
+
+			char chr = s.charAt(i++);
+
+			if (chr == ';') {
+				return i;
+			}
+			if (chr != '.') {
+				return -1;
+			}
+		}
+
+		return -1;
+	}
+
+	private static int parseTypeArguments(String s, int i, List<String> names) {
+		while (i >= 0 && i < s.length() && s.charAt(i) != '>') {
+			char chr = s.charAt(i);
+
+			if (chr == '*') {
+				i++;
+			} else {
+				i = parseType(s, (chr == '+' || chr == '-') ? i + 1 : i, names);
+			}
+		}
+
+		return (i < 0 || i >= s.length()) ? -1 : i + 1;
+	}
+}
@@ -3,14 +3,18 @@ package net.ornithemc.nester.jar;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.stream.IntStream;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.MethodVisitor;
@@ -18,16 +22,27 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import net.ornithemc.nester.MethodKey;
+import net.ornithemc.nester.SymbolTable;
+
 public class SourceJar {
 
-	private static final Comparator<String> CLASS_NAME_COMPARATOR = (c1, c2) -> {
+	/**
+	 * Orders class names by length, then lexically. This is the order
+	 * of {@link #getClasses}, in which classes are written to nested jars.
+	 */
+	public static final Comparator<String> CLASS_NAME_COMPARATOR = (c1, c2) -> {
 		int l1 = c1.length();
 		int l2 = c2.length();
 
 		return l1 == l2 ? c1.compareTo(c2) : l1 - l2;
 	};
 
+	// the size of the batches of classes that are parsed in parallel
+	private static final long PARALLEL_BATCH_BYTES = 16 * 1024 * 1024;
+
 	private final Path src;
+	private final SymbolTable symbols;
 
 	private final Map<String, ClassNode> classes;
 	private final Map<String, ClassNode> newClasses;
@@ -35,33 +50,110 @@ public class SourceJar {
 	private int classVersion = -1;
 
 	public SourceJar(Path src) {
+		this(src, new SymbolTable());
+	}
+
+	public SourceJar(Path src, SymbolTable symbols) {
+		this(src, symbols, false);
+	}
+
+	/**
+	 * Read the classes of the jar at the given path. If the jar holds
+	 * the same class more than once, under the same entry name or under
+	 * different ones, the first one is kept, as on a class path, and in
+	 * the same way whether the classes are parsed in parallel or not.
+	 *
+	 * @param parallel whether to parse the classes of the jar on
+	 *                 multiple threads, on the common fork-join pool
+	 */
+	public SourceJar(Path src, SymbolTable symbols, boolean parallel) {
 		this.src = src;
+		this.symbols = symbols;
 
 		this.classes = new TreeMap<>(CLASS_NAME_COMPARATOR);
 		this.newClasses = new TreeMap<>(CLASS_NAME_COMPARATOR);
 
-		this.read();
+		if (parallel) {
+			this.readParallel();
+		} else {
+			this.read();
+		}
 	}
 
 	private void read() {
+		EntryBuffers buffers = EntryBuffers.get();
+
 		try (JarInputStream js = new JarInputStream(new FileInputStream(src.toFile()))) {
 			for (JarEntry entry; (entry = js.getNextJarEntry()) != null; ) {
 				if (entry.getName().endsWith("class")) {
-					ClassReader reader = new ClassReader(js);
-					ClassNode visitor = new ClassNodeWrapper(Opcodes.ASM9);
+					int length = buffers.read(js);
+					add(parse(new ClassReader(buffers.entry(), 0, length)));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-					reader.accept(visitor, ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+	private void readParallel() {
+		EntryBuffers buffers = EntryBuffers.get();
+		List<byte[]> batch = new ArrayList<>();
+		long batchBytes = 0;
 
-					if (classVersion < 0 || visitor.version < classVersion) {
-						classVersion = visitor.version;
+		// reading the jar is sequential, but parsing can be spread over
+		// multiple threads, a batch of classes at a time, so that only
+		// the bytes of one batch are held in memory at once
+		try (JarInputStream js = new JarInputStream(new FileInputStream(src.toFile()))) {
+			for (JarEntry entry; (entry = js.getNextJarEntry()) != null; ) {
+				if (entry.getName().endsWith("class")) {
+					int length = buffers.read(js);
+					batch.add(Arrays.copyOf(buffers.entry(), length));
+					batchBytes += length;
+
+					if (batchBytes >= PARALLEL_BATCH_BYTES) {
+						parseParallel(batch);
+						batch.clear();
+						batchBytes = 0;
 					}
-
-					classes.put(visitor.name, visitor);
 				}
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+
+		parseParallel(batch);
+	}
+
+	private void parseParallel(List<byte[]> batch) {
+		ClassNode[] parsed = new ClassNode[batch.size()];
+
+		IntStream.range(0, parsed.length).parallel().forEach(i -> {
+			parsed[i] = parse(new ClassReader(batch.get(i)));
+		});
+
+		// add the classes in the order of the jar, so that duplicate
+		// classes are resolved the same way as when reading sequentially
+		for (ClassNode clazz : parsed) {
+			add(clazz);
+		}
+	}
+
+	/**
+	 * Add a class that was read from the jar. If the jar holds the same
+	 * class more than once, the first one is kept.
+	 */
+	private void add(ClassNode clazz) {
+		if (classes.putIfAbsent(clazz.name, clazz) == null) {
+			if (classVersion < 0 || clazz.version < classVersion) {
+				classVersion = clazz.version;
+			}
+		}
+	}
+
+	private ClassNode parse(ClassReader reader) {
+		ClassNode clazz = new ClassNodeWrapper(Opcodes.ASM9, symbols);
+		reader.accept(clazz, ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+		return clazz;
 	}
 
 	public Collection<ClassNode> getClasses() {
@@ -94,11 +186,11 @@ public class SourceJar {
 	public MethodNode getMethod(String className, String methodName, String methodDesc) {
 		ClassNode clazz = getClass(className);
 
-		if (clazz == null) {
+		if (clazz == null || methodName == null || methodDesc == null) {
 			return null;
 		}
 
-		return ((ClassNodeWrapper)clazz).methods.get(methodName + methodDesc);
+		return ((ClassNodeWrapper)clazz).methods.get(new MethodKey(clazz.name, methodName, methodDesc));
 	}
 
 	public Collection<ClassNode> getNewClasses() {
@@ -111,7 +203,7 @@ public class SourceJar {
 		}
 
 		ClassNode clazz = newClasses.computeIfAbsent(name, key -> {
-			ClassNode c = new ClassNodeWrapper(Opcodes.ASM9);
+			ClassNode c = new ClassNodeWrapper(Opcodes.ASM9, symbols);
 			c.visit(
 				classVersion,
 				Opcodes.ACC_PUBLIC,
@@ -128,13 +220,27 @@ public class SourceJar {
 		return clazz;
 	}
 
+	/**
+	 * Remove all classes generated through {@link #newClass}, so that
+	 * this jar can be reused for another set of nests.
+	 */
+	public void reset() {
+		for (String name : newClasses.keySet()) {
+			classes.remove(name);
+		}
+
+		newClasses.clear();
+	}
+
 	private static class ClassNodeWrapper extends ClassNode {
 
-		private final Map<String, MethodNode> methods;
+		private final SymbolTable symbols;
+		private final Map<MethodKey, MethodNode> methods;
 
-		public ClassNodeWrapper(int api) {
+		public ClassNodeWrapper(int api, SymbolTable symbols) {
 			super(api);
 
+			this.symbols = symbols;
 			this.methods = new HashMap<>();
 		}
 
@@ -155,10 +261,15 @@ public class SourceJar {
 			return name.hashCode();
 		}
 
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+			super.visit(version, access, symbols.intern(name), signature, symbols.intern(superName), symbols.intern(interfaces));
+		}
+
 		@Override
 		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-			MethodNode method = new MethodNode(access, name, descriptor, signature, exceptions);
-			methods.put(method.name + method.desc, method);
+			MethodNode method = new MethodNode(access, symbols.intern(name), symbols.intern(descriptor), signature, exceptions);
+			methods.put(new MethodKey(this.name, method.name, method.desc), method);
 			return method;
 		}
 	}
@@ -0,0 +1,117 @@
+package net.ornithemc.nester.mapping;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ornithemc.nester.MethodKey;
+import net.ornithemc.nester.NesterException;
+
+/**
+ * Class and method mappings from one namespace to another.
+ */
+public class Mappings {
+
+	public static Mappings of(Path mappings, String srcNamespace, String dstNamespace) {
+		Mappings m;
+
+		try (BufferedReader br = new BufferedReader(new FileReader(mappings.toFile()))) {
+			m = of(br, srcNamespace, dstNamespace);
+		} catch (IOException e) {
+			throw new NesterException("unable to read mappings", e);
+		}
+
+		return m;
+	}
+
+	public static Mappings of(BufferedReader reader, String srcNamespace, String dstNamespace) throws IOException {
+		Mappings mappings = empty();
+		MappingsIo.read(mappings, reader, srcNamespace, dstNamespace);
+		return mappings;
+	}
+
+	public static Mappings empty() {
+		return new Mappings();
+	}
+
+	private final Map<String, String> classes;
+	private final Map<MethodKey, String> methods;
+
+	private Mappings() {
+		this.classes = new HashMap<>();
+		this.methods = new HashMap<>();
+	}
+
+	public void addClass(String name, String mapping) {
+		classes.put(name, mapping);
+	}
+
+	public void addMethod(String owner, String name, String desc, String mapping) {
+		methods.put(new MethodKey(owner, name, desc), mapping);
+	}
+
+	/**
+	 * Returns the mapped name of the given class, or the given name
+	 * if the class is not mapped.
+	 */
+	public String mapClass(String name) {
+		return classes.getOrDefault(name, name);
+	}
+
+	/**
+	 * Returns the mapped name of the given method, or the given name
+	 * if the method is not mapped.
+	 */
+	public String mapMethod(String owner, String name, String desc) {
+		return methods.getOrDefault(new MethodKey(owner, name, desc), name);
+	}
+
+	/**
+	 * Map all class names in the given field or method descriptor.
+	 * 
+	 * @throws NesterException if a class name in the descriptor is
+	 *                         not terminated
+	 */
+	public String mapDesc(String desc) {
+		StringBuilder sb = null;
+		int copied = 0;
+
+		for (int i = 0; i < desc.length(); i++) {
+			if (desc.charAt(i) == 'L') {
+				int end = desc.indexOf(';', i);
+
+				if (end < 0) {
+					throw new NesterException("invalid descriptor: " + desc);
+				}
+
+				String name = desc.substring(i + 1, end);
+				String mapping = classes.get(name);
+
+				if (mapping != null) {
+					if (sb == null) {
+						sb = new StringBuilder(desc.length() + 32);
+					}
+
+					sb.append(desc, copied, i + 1).append(mapping);
+					copied = end;
+				}
+
+				// skip over the class name, it may contain an 'L'
+				i = end;
+			}
+		}
+
+		if (sb == null) {
+			return desc;
+		}
+
+		return sb.append(desc, copied, desc.length()).toString();
+	}
+
+	public boolean isEmpty() {
+		return classes.isEmpty() && methods.isEmpty();
+	}
+}
@@ -0,0 +1,146 @@
+package net.ornithemc.nester.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ornithemc.nester.NesterException;
+
+/**
+ * Reads class and method mappings from Tiny v1 and Tiny v2 files.
+ */
+public class MappingsIo {
+
+	private static final String TAB = "\t";
+
+	public static void read(Mappings mappings, BufferedReader br, String srcNamespace, String dstNamespace) throws IOException {
+		String header = br.readLine();
+
+		if (header == null) {
+			throw new NesterException("mappings file is empty");
+		}
+
+		String[] args = header.split(TAB);
+		int namespaceOffset;
+
+		if (args[0].equals("v1")) {
+			namespaceOffset = 1;
+		} else if (args[0].equals("tiny") && args.length > 1 && args[1].equals("2")) {
+			namespaceOffset = 3;
+		} else {
+			throw new NesterException("unsupported mappings format: " + header);
+		}
+
+		int src = -1;
+		int dst = -1;
+
+		for (int i = namespaceOffset; i < args.length; i++) {
+			if (args[i].equals(srcNamespace)) {
+				src = i - namespaceOffset;
+			}
+			if (args[i].equals(dstNamespace)) {
+				dst = i - namespaceOffset;
+			}
+		}
+
+		if (src < 0) {
+			throw new NesterException("unknown namespace " + srcNamespace + " in mappings");
+		}
+		if (dst < 0) {
+			throw new NesterException("unknown namespace " + dstNamespace + " in mappings");
+		}
+
+		List<String[]> classes = new ArrayList<>();
+		List<String[]> methods = new ArrayList<>();
+
+		if (namespaceOffset == 1) {
+			readV1(br, classes, methods);
+		} else {
+			readV2(br, classes, methods);
+		}
+
+		// method descriptors are given in the first namespace, so
+		// the class names in that namespace are needed to map them
+		Mappings srcClasses = Mappings.empty();
+
+		for (String[] names : classes) {
+			String name = names[0];
+			String srcName = getName(names, src, name);
+			String dstName = getName(names, dst, name);
+
+			srcClasses.addClass(name, srcName);
+			mappings.addClass(srcName, dstName);
+		}
+		for (String[] method : methods) {
+			String owner = srcClasses.mapClass(method[0]);
+			String desc = srcClasses.mapDesc(method[1]);
+			String name = method[2];
+			String srcName = getName(method, src + 2, name);
+			String dstName = getName(method, dst + 2, name);
+
+			mappings.addMethod(owner, srcName, desc, dstName);
+		}
+	}
+
+	private static void readV1(BufferedReader br, List<String[]> classes, List<String[]> methods) throws IOException {
+		String line;
+
+		while ((line = br.readLine()) != null) {
+			if (line.startsWith("CLASS" + TAB)) {
+				String[] args = line.split(TAB);
+				classes.add(copyOfRange(args, 1));
+			} else if (line.startsWith("METHOD" + TAB)) {
+				String[] args = line.split(TAB);
+				methods.add(copyOfRange(args, 1));
+			}
+		}
+	}
+
+	private static void readV2(BufferedReader br, List<String[]> classes, List<String[]> methods) throws IOException {
+		String line;
+		String owner = null;
+
+		while ((line = br.readLine()) != null) {
+			int indent = 0;
+
+			while (indent < line.length() && line.charAt(indent) == '\t') {
+				indent++;
+			}
+
+			if (indent == 0 && line.startsWith("c" + TAB)) {
+				String[] args = line.split(TAB, -1);
+				String[] names = copyOfRange(args, 1);
+
+				owner = names[0];
+				classes.add(names);
+			} else if (indent == 1 && owner != null && line.startsWith("m" + TAB, indent)) {
+				String[] args = line.substring(indent).split(TAB, -1);
+				String[] method = new String[args.length];
+
+				method[0] = owner;
+				System.arraycopy(args, 1, method, 1, args.length - 1);
+
+				methods.add(method);
+			}
+		}
+	}
+
+	private static String[] copyOfRange(String[] args, int from) {
+		String[] copy = new String[args.length - from];
+		System.arraycopy(args, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Returns the name in the given column, or the fallback name
+	 * if that column is missing or empty.
+	 */
+	private static String getName(String[] names, int index, String fallback) {
+		if (index >= names.length || names[index].isEmpty()) {
+			return fallback;
+		}
+
+		return names[index];
+	}
+}
@@ -1,5 +1,7 @@
 package net.ornithemc.nester.nest;
 
+import java.util.Objects;
+
 public class Nest {
 
 	public final NestType type;
@@ -39,6 +41,28 @@ public class Nest {
 		return className.hashCode();
 	}
 
+	/**
+	 * Check whether the given nest puts its class in the same place as
+	 * this nest. Unlike {@link #equals}, which only compares the class
+	 * names, this compares every property of both nests.
+	 */
+	public boolean matches(Nest nest) {
+		if (this == nest) {
+			return true;
+		}
+		if (nest == null) {
+			return false;
+		}
+
+		return type == nest.type
+			&& access == nest.access
+			&& className.equals(nest.className)
+			&& enclClassName.equals(nest.enclClassName)
+			&& Objects.equals(enclMethodName, nest.enclMethodName)
+			&& Objects.equals(enclMethodDesc, nest.enclMethodDesc)
+			&& innerName.equals(nest.innerName);
+	}
+
 	public boolean isAnonymous() {
 		return type == NestType.ANONYMOUS;
 	}
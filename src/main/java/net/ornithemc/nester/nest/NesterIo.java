@@ -8,10 +8,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import net.ornithemc.nester.SymbolTable;
+
 public class NesterIo {
 
 	private static final String TAB = "\t";
 
+	private static final String ADDED = "+";
+	private static final String REMOVED = "-";
+	private static final String CHANGED = "~";
+
 	public static void read(Nests nests, Path mappings) throws IOException {
 		try (BufferedReader br = new BufferedReader(new FileReader(mappings.toFile()))) {
 			read(nests, br);
@@ -22,70 +28,93 @@ public class NesterIo {
 		String line;
 
 		while ((line = br.readLine()) != null) {
-			String[] args = line.split(TAB);
+			Nest nest = read(line, nests.symbols());
 
-			if (args.length != 6) {
-				System.out.println("Incorrect number of arguments for mapping \'" + line + "\' - expected 6, got " + args.length + "...");
-				continue;
+			if (nest != null) {
+				nests.add(nest);
 			}
+		}
+	}
 
-			String className = args[0];
-			String enclClassName = args[1];
-			String enclMethodName = args[2];
-			String enclMethodDesc = args[3];
-			String innerName = args[4];
-			String accessString = args[5];
+	/**
+	 * Parse a single nest from the given line, or return null if the
+	 * line does not describe a valid nest. The names of the nest are
+	 * not interned.
+	 */
+	public static Nest read(String line) {
+		return read(line, null);
+	}
 
-			if (className == null || className.isEmpty()) {
-				System.out.println("Invalid mapping \'" + line + "\': missing class name argument!");
-				continue;
-			}
-			if (enclClassName == null || enclClassName.isEmpty()) {
-				System.out.println("Invalid mapping \'" + line + "\': missing enclosing class name argument!");
-				continue;
-			}
-			if (innerName == null || innerName.isEmpty()) {
-				System.out.println("Invalid mapping \'" + line + "\': missing inner class name argument!");
-				continue;
-			}
+	/**
+	 * Parse a single nest from the given line, or return null if the
+	 * line does not describe a valid nest.
+	 */
+	public static Nest read(String line, SymbolTable symbols) {
+		String[] args = line.split(TAB);
 
-			boolean emptyName = (enclMethodName == null) || enclMethodName.isEmpty();
-			boolean emptyDesc = (enclMethodDesc == null) || enclMethodDesc.isEmpty();
+		if (args.length != 6) {
+			System.out.println("Incorrect number of arguments for mapping \'" + line + "\' - expected 6, got " + args.length + "...");
+			return null;
+		}
 
-			if (emptyName || emptyDesc) {
-				enclMethodName = null;
-				enclMethodDesc = null;
-			}
+		String className = intern(symbols, args[0]);
+		String enclClassName = intern(symbols, args[1]);
+		String enclMethodName = intern(symbols, args[2]);
+		String enclMethodDesc = intern(symbols, args[3]);
+		String innerName = args[4];
+		String accessString = args[5];
 
-			int idx = 0;
+		if (className == null || className.isEmpty()) {
+			System.out.println("Invalid mapping \'" + line + "\': missing class name argument!");
+			return null;
+		}
+		if (enclClassName == null || enclClassName.isEmpty()) {
+			System.out.println("Invalid mapping \'" + line + "\': missing enclosing class name argument!");
+			return null;
+		}
+		if (innerName == null || innerName.isEmpty()) {
+			System.out.println("Invalid mapping \'" + line + "\': missing inner class name argument!");
+			return null;
+		}
 
-			while (idx < innerName.length() && Character.isDigit(innerName.charAt(idx))) {
-				idx++;
-			}
+		boolean emptyName = (enclMethodName == null) || enclMethodName.isEmpty();
+		boolean emptyDesc = (enclMethodDesc == null) || enclMethodDesc.isEmpty();
 
-			int access = -1;
-
-			try {
-				if (accessString.startsWith("0x")) {
-					access = Integer.parseInt(accessString.substring(2), 0x10);
-				} else if (accessString.startsWith("0b")) {
-					access = Integer.parseInt(accessString.substring(2), 0b10);
-				} else {
-					access = Integer.parseInt(accessString);
-				}
-			} catch (NumberFormatException e) {
-			}
+		if (emptyName || emptyDesc) {
+			enclMethodName = null;
+			enclMethodDesc = null;
+		}
 
-			if (access < 0) {
-				System.out.println("Invalid mapping \'" + line + "\': invalid access flags!");
-				continue;
-			}
+		int idx = 0;
+
+		while (idx < innerName.length() && Character.isDigit(innerName.charAt(idx))) {
+			idx++;
+		}
+
+		int access = -1;
 
-			NestType type = (idx == innerName.length()) ? NestType.ANONYMOUS : ((idx == 0) ? NestType.INNER : NestType.LOCAL);
-			Nest nest = new Nest(type, className, enclClassName, enclMethodName, enclMethodDesc, innerName, access);
+		try {
+			if (accessString.startsWith("0x")) {
+				access = Integer.parseInt(accessString.substring(2), 0x10);
+			} else if (accessString.startsWith("0b")) {
+				access = Integer.parseInt(accessString.substring(2), 0b10);
+			} else {
+				access = Integer.parseInt(accessString);
+			}
+		} catch (NumberFormatException e) {
+		}
 
-			nests.add(nest);
+		if (access < 0) {
+			System.out.println("Invalid mapping \'" + line + "\': invalid access flags!");
+			return null;
 		}
+
+		NestType type = (idx == innerName.length()) ? NestType.ANONYMOUS : ((idx == 0) ? NestType.INNER : NestType.LOCAL);
+		return new Nest(type, className, enclClassName, enclMethodName, enclMethodDesc, innerName, access);
+	}
+
+	private static String intern(SymbolTable symbols, String name) {
+		return symbols == null ? name : symbols.intern(name);
 	}
 
 	public static void write(Nests nests, Path mappings) throws IOException {
@@ -98,30 +127,62 @@ public class NesterIo {
 
 	public static void write(Nests nests, BufferedWriter bw) throws IOException {
 		for (Nest nest : nests) {
-			String className = nest.className;
-			String enclClassName = nest.enclClassName;
-			String enclMethodName = nest.enclMethodName;
-			String enclMethodDesc = nest.enclMethodDesc;
-			String innerName = nest.innerName;
-			String access = Integer.toString(nest.access);
-
-			if (enclMethodName == null || enclMethodDesc == null) {
-				enclMethodName = "";
-				enclMethodDesc = "";
-			}
+			write(nest, bw);
+			bw.newLine();
+		}
+	}
 
-			bw.write(className);
-			bw.write(TAB);
-			bw.write(enclClassName);
-			bw.write(TAB);
-			bw.write(enclMethodName);
+	/**
+	 * Write a single nest as one line, without a line terminator.
+	 */
+	public static void write(Nest nest, BufferedWriter bw) throws IOException {
+		String className = nest.className;
+		String enclClassName = nest.enclClassName;
+		String enclMethodName = nest.enclMethodName;
+		String enclMethodDesc = nest.enclMethodDesc;
+		String innerName = nest.innerName;
+		String access = Integer.toString(nest.access);
+
+		if (enclMethodName == null || enclMethodDesc == null) {
+			enclMethodName = "";
+			enclMethodDesc = "";
+		}
+
+		bw.write(className);
+		bw.write(TAB);
+		bw.write(enclClassName);
+		bw.write(TAB);
+		bw.write(enclMethodName);
+		bw.write(TAB);
+		bw.write(enclMethodDesc);
+		bw.write(TAB);
+		bw.write(innerName);
+		bw.write(TAB);
+		bw.write(access);
+	}
+
+	/**
+	 * Write the given diff, one nest per line, with each line prefixed
+	 * by whether that nest was added, removed or changed. For changed
+	 * nests the new nest is written.
+	 */
+	public static void write(NestsDiff diff, BufferedWriter bw) throws IOException {
+		for (Nest nest : diff.getRemoved()) {
+			bw.write(REMOVED);
 			bw.write(TAB);
-			bw.write(enclMethodDesc);
+			write(nest, bw);
+			bw.newLine();
+		}
+		for (Nest nest : diff.getAdded()) {
+			bw.write(ADDED);
 			bw.write(TAB);
-			bw.write(innerName);
+			write(nest, bw);
+			bw.newLine();
+		}
+		for (NestsDiff.Change change : diff.getChanged()) {
+			bw.write(CHANGED);
 			bw.write(TAB);
-			bw.write(access);
-
+			write(change.to, bw);
 			bw.newLine();
 		}
 	}
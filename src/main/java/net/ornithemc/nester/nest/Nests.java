@@ -4,19 +4,36 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import net.ornithemc.nester.MethodKey;
 import net.ornithemc.nester.NesterException;
+import net.ornithemc.nester.SymbolTable;
 
 public class Nests implements Iterable<Nest> {
 
 	public static Nests of(Path mappings) {
+		return of(mappings, new SymbolTable());
+	}
+
+	/**
+	 * Read the nests in the given file, holding their names in the
+	 * given symbol table.
+	 */
+	public static Nests of(Path mappings, SymbolTable symbols) {
 		Nests nests;
 
 		try (BufferedReader br = new BufferedReader(new FileReader(mappings.toFile()))) {
-			nests = of(br);
+			nests = of(br, symbols);
 		} catch (IOException e) {
 			throw new NesterException("unable to read nests", e);
 		}
@@ -25,19 +42,36 @@ public class Nests implements Iterable<Nest> {
 	}
 
 	public static Nests of(BufferedReader reader) throws IOException {
-		Nests nests = empty();
+		return of(reader, new SymbolTable());
+	}
+
+	/**
+	 * Read nests from the given reader, holding their names in the
+	 * given symbol table.
+	 */
+	public static Nests of(BufferedReader reader, SymbolTable symbols) throws IOException {
+		Nests nests = empty(symbols);
 		NesterIo.read(nests, reader);
 		return nests;
 	}
 
 	public static Nests empty() {
-		return new Nests();
+		return empty(new SymbolTable());
+	}
+
+	public static Nests empty(SymbolTable symbols) {
+		return new Nests(symbols);
 	}
 
 	private final Map<String, Nest> all;
+	private final SymbolTable symbols;
 
-	private Nests() {
+	// built on the first query, and dropped each time a nest is added
+	private Index index;
+
+	private Nests(SymbolTable symbols) {
 		this.all = new LinkedHashMap<>();
+		this.symbols = symbols;
 	}
 
 	@Override
@@ -66,11 +100,140 @@ public class Nests implements Iterable<Nest> {
 		return all.get(className);
 	}
 
+	public boolean contains(String className) {
+		return all.containsKey(className);
+	}
+
+	public int size() {
+		return all.size();
+	}
+
 	public void add(Nest nest) {
 		all.put(nest.className, nest);
+		index = null;
+	}
+
+	/**
+	 * Returns the nests that are directly enclosed by the given class,
+	 * including those enclosed by one of its methods.
+	 */
+	public Collection<Nest> getChildren(String enclClassName) {
+		return Collections.unmodifiableList(index().children.getOrDefault(enclClassName, Collections.emptyList()));
+	}
+
+	/**
+	 * Returns the nests that are enclosed by the given method.
+	 */
+	public Collection<Nest> getEnclosedBy(String enclClassName, String enclMethodName, String enclMethodDesc) {
+		return Collections.unmodifiableList(index().enclosedByMethod.getOrDefault(new MethodKey(enclClassName, enclMethodName, enclMethodDesc), Collections.emptyList()));
+	}
+
+	/**
+	 * Returns the nest of the class that encloses the given class, or
+	 * {@code null} if the given class or its enclosing class is not nested.
+	 */
+	public Nest getParent(String className) {
+		Nest nest = all.get(className);
+		return nest == null ? null : all.get(nest.enclClassName);
+	}
+
+	/**
+	 * Returns the number of classes the given class is nested in, or
+	 * {@code 0} if it is not nested.
+	 */
+	public int getDepth(String className) {
+		Integer depth = index().depths.get(className);
+		return depth == null ? 0 : depth;
+	}
+
+	/**
+	 * Returns the top level class the given class is nested in, or the
+	 * given class itself if it is not nested.
+	 */
+	public String getOutermostClass(String className) {
+		return index().outermostClasses.getOrDefault(className, className);
+	}
+
+	private Index index() {
+		if (index == null) {
+			index = new Index(all);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the symbol table that holds the names of these nests.
+	 * Jars read against these nests share it, so that each class
+	 * name is held only once.
+	 */
+	public SymbolTable symbols() {
+		return symbols;
 	}
 
 	public boolean isEmpty() {
 		return all.isEmpty();
 	}
+
+	private static class Index {
+
+		private final Map<String, List<Nest>> children;
+		private final Map<MethodKey, List<Nest>> enclosedByMethod;
+		private final Map<String, Integer> depths;
+		private final Map<String, String> outermostClasses;
+
+		private Index(Map<String, Nest> all) {
+			this.children = new HashMap<>();
+			this.enclosedByMethod = new HashMap<>();
+			this.depths = new HashMap<>();
+			this.outermostClasses = new HashMap<>();
+
+			for (Nest nest : all.values()) {
+				children.computeIfAbsent(nest.enclClassName, key -> new ArrayList<>()).add(nest);
+
+				if (nest.enclMethodName != null && nest.enclMethodDesc != null) {
+					enclosedByMethod.computeIfAbsent(new MethodKey(nest.enclClassName, nest.enclMethodName, nest.enclMethodDesc), key -> new ArrayList<>()).add(nest);
+				}
+			}
+
+			List<String> chain = new ArrayList<>();
+			Set<String> visited = new HashSet<>();
+
+			for (String className : all.keySet()) {
+				if (depths.containsKey(className)) {
+					continue;
+				}
+
+				// walk up to the first class whose depth is known,
+				// or to a top level class, then fill in the chain
+				chain.clear();
+				visited.clear();
+
+				String c = className;
+
+				while (all.containsKey(c) && !depths.containsKey(c) && visited.add(c)) {
+					chain.add(c);
+					c = all.get(c).enclClassName;
+				}
+
+				int depth;
+				String outermostClass;
+
+				if (depths.containsKey(c)) {
+					depth = depths.get(c);
+					outermostClass = outermostClasses.get(c);
+				} else {
+					// either a top level class, or a cycle in the nests,
+					// in which case the cycle is cut where it was found
+					depth = 0;
+					outermostClass = c;
+				}
+
+				for (int i = chain.size() - 1; i >= 0; i--) {
+					depths.put(chain.get(i), ++depth);
+					outermostClasses.put(chain.get(i), outermostClass);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,73 @@
+package net.ornithemc.nester.nest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two sets of nests, keyed by class name.
+ */
+public class NestsDiff {
+
+	/**
+	 * Compute the nests that were added, removed or changed going from
+	 * the first set of nests to the second.
+	 */
+	public static NestsDiff of(Nests from, Nests to) {
+		NestsDiff diff = new NestsDiff();
+
+		for (Nest nest : from) {
+			Nest newNest = to.get(nest.className);
+
+			if (newNest == null) {
+				diff.removed.add(nest);
+			} else if (!nest.matches(newNest)) {
+				diff.changed.add(new Change(nest, newNest));
+			}
+		}
+		for (Nest nest : to) {
+			if (!from.contains(nest.className)) {
+				diff.added.add(nest);
+			}
+		}
+
+		return diff;
+	}
+
+	private final List<Nest> added;
+	private final List<Nest> removed;
+	private final List<Change> changed;
+
+	private NestsDiff() {
+		this.added = new ArrayList<>();
+		this.removed = new ArrayList<>();
+		this.changed = new ArrayList<>();
+	}
+
+	public List<Nest> getAdded() {
+		return Collections.unmodifiableList(added);
+	}
+
+	public List<Nest> getRemoved() {
+		return Collections.unmodifiableList(removed);
+	}
+
+	public List<Change> getChanged() {
+		return Collections.unmodifiableList(changed);
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	public static class Change {
+
+		public final Nest from;
+		public final Nest to;
+
+		private Change(Nest from, Nest to) {
+			this.from = from;
+			this.to = to;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package net.ornithemc.nester.nest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ornithemc.nester.NesterException;
+
+/**
+ * The result of a three-way merge of two sets of nests that were
+ * both derived from a common base.
+ */
+public class NestsMerge {
+
+	/**
+	 * Merge the changes made to the base nests in the left and right
+	 * nests. A class that was changed differently on both sides is a
+	 * conflict, for which the base nest is kept in the merged nests.
+	 */
+	public static NestsMerge of(Nests base, Nests left, Nests right) {
+		NestsMerge merge = new NestsMerge();
+		Set<String> classNames = new LinkedHashSet<>();
+
+		for (Nest nest : base) {
+			classNames.add(nest.className);
+		}
+		for (Nest nest : left) {
+			classNames.add(nest.className);
+		}
+		for (Nest nest : right) {
+			classNames.add(nest.className);
+		}
+
+		for (String className : classNames) {
+			Nest baseNest = base.get(className);
+			Nest leftNest = left.get(className);
+			Nest rightNest = right.get(className);
+
+			Nest nest;
+
+			if (matches(leftNest, rightNest) || matches(baseNest, rightNest)) {
+				nest = leftNest;
+			} else if (matches(baseNest, leftNest)) {
+				nest = rightNest;
+			} else {
+				merge.conflicts.add(new Conflict(className, baseNest, leftNest, rightNest));
+				nest = baseNest;
+			}
+
+			if (nest != null) {
+				merge.merged.add(nest);
+			}
+		}
+
+		return merge;
+	}
+
+	private static boolean matches(Nest n1, Nest n2) {
+		return n1 == null ? n2 == null : n1.matches(n2);
+	}
+
+	private final Nests merged;
+	private final List<Conflict> conflicts;
+
+	private NestsMerge() {
+		this.merged = Nests.empty();
+		this.conflicts = new ArrayList<>();
+	}
+
+	public Nests getMerged() {
+		return merged;
+	}
+
+	public List<Conflict> getConflicts() {
+		return Collections.unmodifiableList(conflicts);
+	}
+
+	public boolean hasConflicts() {
+		return !conflicts.isEmpty();
+	}
+
+	/**
+	 * @throws ConflictException if the merge has any conflicts
+	 */
+	public void checkConflicts() {
+		if (hasConflicts()) {
+			throw new ConflictException(this);
+		}
+	}
+
+	public static class Conflict {
+
+		public final String className;
+
+		// any of these may be null if the class
+		// was not nested in that set of nests
+		public final Nest base;
+		public final Nest left;
+		public final Nest right;
+
+		private Conflict(String className, Nest base, Nest left, Nest right) {
+			this.className = className;
+
+			this.base = base;
+			this.left = left;
+			this.right = right;
+		}
+	}
+
+	/**
+	 * Thrown when the merged nests are used while there are unresolved
+	 * conflicts. The merge result is still available from the exception.
+	 */
+	public static class ConflictException extends NesterException {
+
+		private static final long serialVersionUID = 2806447316385913517L;
+
+		private final transient NestsMerge merge;
+
+		private ConflictException(NestsMerge merge) {
+			super(merge.conflicts.size() + " conflicts while merging nests");
+
+			this.merge = merge;
+		}
+
+		public NestsMerge getMerge() {
+			return merge;
+		}
+	}
+}
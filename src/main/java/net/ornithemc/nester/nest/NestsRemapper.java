@@ -0,0 +1,89 @@
+package net.ornithemc.nester.nest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.ornithemc.nester.SymbolTable;
+import net.ornithemc.nester.mapping.Mappings;
+
+/**
+ * Translates nests from one namespace to another, without needing
+ * the jar they apply to.
+ */
+public class NestsRemapper {
+
+	public static Nests remap(Nests nests, Mappings mappings) {
+		Nests remapped = Nests.empty();
+
+		for (Nest nest : nests) {
+			remapped.add(remap(nest, mappings, remapped.symbols()));
+		}
+
+		return remapped;
+	}
+
+	/**
+	 * Remap the nests in the source file and write them to the destination
+	 * file, one line at a time, without holding all of them in memory.
+	 */
+	public static void remap(Path src, Path dst, Mappings mappings) throws IOException {
+		Files.createDirectories(dst.toAbsolutePath().getParent());
+
+		try (BufferedReader br = new BufferedReader(new FileReader(src.toFile()));
+			BufferedWriter bw = new BufferedWriter(new FileWriter(dst.toFile()))) {
+			remap(br, bw, mappings);
+		}
+	}
+
+	public static void remap(BufferedReader br, BufferedWriter bw, Mappings mappings) throws IOException {
+		String line;
+
+		// each nest is written out right away, so
+		// there is no point in interning its names
+		while ((line = br.readLine()) != null) {
+			Nest nest = NesterIo.read(line);
+
+			if (nest != null) {
+				NesterIo.write(remap(nest, mappings, null), bw);
+				bw.newLine();
+			}
+		}
+	}
+
+	public static Nest remap(Nest nest, Mappings mappings) {
+		return remap(nest, mappings, null);
+	}
+
+	private static Nest remap(Nest nest, Mappings mappings, SymbolTable symbols) {
+		String className = mappings.mapClass(nest.className);
+		String enclClassName = mappings.mapClass(nest.enclClassName);
+		String enclMethodName = nest.enclMethodName;
+		String enclMethodDesc = nest.enclMethodDesc;
+
+		if (enclMethodName != null && enclMethodDesc != null) {
+			// the method is looked up by its owner and descriptor
+			// in the source namespace, so map the name first
+			enclMethodName = mappings.mapMethod(nest.enclClassName, enclMethodName, enclMethodDesc);
+			enclMethodDesc = mappings.mapDesc(enclMethodDesc);
+		}
+
+		return new Nest(
+			nest.type,
+			intern(symbols, className),
+			intern(symbols, enclClassName),
+			intern(symbols, enclMethodName),
+			intern(symbols, enclMethodDesc),
+			nest.innerName,
+			nest.access
+		);
+	}
+
+	private static String intern(SymbolTable symbols, String name) {
+		return symbols == null ? name : symbols.intern(name);
+	}
+}
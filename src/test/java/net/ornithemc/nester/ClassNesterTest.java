@@ -0,0 +1,112 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class ClassNesterTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void transformMatchesNestedJarWithoutRemapping() throws IOException {
+		Nester.Options options = new Nester.Options().remap(false);
+		Path src = sourceJar();
+		Map<String, byte[]> sources = TestJars.readJar(src);
+		Map<String, byte[]> nested = nest(options, src);
+
+		ClassNester nester = ClassNester.of(options, src, nests());
+
+		for (Map.Entry<String, byte[]> entry : sources.entrySet()) {
+			String className = entry.getKey().substring(0, entry.getKey().length() - ".class".length());
+			// classes that are not affected are left as they are
+			byte[] expected = nester.affects(className) ? nester.transform(entry.getValue()) : entry.getValue();
+
+			assertEquals(className, nester.map(className));
+			assertArrayEquals(nested.get(entry.getKey()), expected);
+		}
+	}
+
+	@Test
+	public void transformMatchesNestedJar() throws IOException {
+		Nester.Options options = new Nester.Options().heapBudget(0);
+		Path src = sourceJar();
+		Map<String, byte[]> sources = TestJars.readJar(src);
+		Map<String, byte[]> nested = nest(options, src);
+
+		ClassNester nester = ClassNester.of(options, src, nests());
+
+		assertEquals("a$Inner", nester.map("b"));
+		assertEquals("a$1", nester.map("c"));
+
+		for (Map.Entry<String, byte[]> entry : sources.entrySet()) {
+			String className = entry.getKey().substring(0, entry.getKey().length() - ".class".length());
+			byte[] expected = nested.get(nester.map(className) + ".class");
+
+			assertEquals(TestJars.describe(expected), TestJars.describe(nester.transform(entry.getValue())));
+		}
+	}
+
+	@Test
+	public void affectsOnlyNestedClassesWithoutRenames() throws IOException {
+		ClassNester nester = ClassNester.of(new Nester.Options().remap(false), sourceJar(), nests());
+
+		assertTrue(nester.affects("a"));
+		assertTrue(nester.affects("b"));
+		assertTrue(nester.affects("c"));
+		assertFalse(nester.affects("d"));
+		assertFalse(nester.affects("e"));
+	}
+
+	@Test
+	public void affectsAllClassesWithRenames() throws IOException {
+		ClassNester nester = ClassNester.of(sourceJar(), nests());
+
+		// any class could reference a renamed class
+		assertTrue(nester.affects("d"));
+		assertTrue(nester.affects("e"));
+	}
+
+	private Map<String, byte[]> nest(Nester.Options options, Path src) throws IOException {
+		Path dst = dir.resolve("out.jar");
+		Nester.nestJar(options, src, dst, nests());
+
+		return TestJars.readJar(dst);
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "()V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c", "b", cv -> { }));
+		entries.put("d.class", classFile("d", cv -> method(cv, "f", "(Lb;)V")));
+		entries.put("e.class", classFile("e"));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	private static Nests nests() {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "()V", "1", 0));
+
+		return nests;
+	}
+}
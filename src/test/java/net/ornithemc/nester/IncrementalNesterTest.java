@@ -0,0 +1,116 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class IncrementalNesterTest {
+
+	private static final int INNER_ACCESS = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void updateMatchesFullRun() throws IOException {
+		Nester.Options options = new Nester.Options().heapBudget(0).directory(true).index(true).verify(true);
+		Path src = sourceJar();
+
+		Nests n1 = Nests.empty();
+		n1.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", INNER_ACCESS));
+		n1.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "()V", "1", 0));
+		// x is not in the jar, so it is generated
+		n1.add(new Nest(NestType.INNER, "h", "x", null, null, "H", INNER_ACCESS));
+
+		Nests n2 = Nests.empty();
+		n2.add(new Nest(NestType.INNER, "b", "a", null, null, "Other", INNER_ACCESS));
+		n2.add(new Nest(NestType.INNER, "g", "b", null, null, "G", INNER_ACCESS));
+
+		Path incremental = dir.resolve("incremental");
+		Path full = dir.resolve("full");
+
+		SourceJar jar = new SourceJar(src);
+		IncrementalNester nester = new IncrementalNester(options, src, incremental, jar);
+
+		Nester.of(options, n1).apply(jar, src, incremental, ProgressListener.NONE, () -> false);
+		nester.init(n1);
+
+		assertTrue(nester.update(n2) > 0);
+
+		Nester.nestJar(options, src, full, n2);
+
+		assertEquals(snapshot(full), snapshot(incremental));
+
+		// and back again
+		assertTrue(nester.update(n1) > 0);
+
+		Nester.nestJar(options, src, full, n1);
+
+		assertEquals(snapshot(full), snapshot(incremental));
+	}
+
+	@Test
+	public void updateNeedsInit() throws IOException {
+		Path src = sourceJar();
+		Nester.Options options = new Nester.Options().directory(true);
+		IncrementalNester nester = new IncrementalNester(options, src, dir.resolve("out"), new SourceJar(src));
+
+		assertThrows(IllegalStateException.class, () -> nester.update(Nests.empty()));
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "()V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c", "b", cv -> { }));
+		entries.put("d.class", classFile("d", cv -> method(cv, "f", "(Lb;)V")));
+		// only references b through the bound of its type parameter L
+		entries.put("e.class", classFile("e", "<L:Lb;>Ljava/lang/Object;", "java/lang/Object", cv -> { }));
+		entries.put("g.class", classFile("g"));
+		entries.put("h.class", classFile("h"));
+		entries.put("data/i.txt", "i".getBytes(StandardCharsets.UTF_8));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	/**
+	 * Returns the relative path and contents of every file in the given
+	 * directory, with class files described rather than read as is.
+	 */
+	private static Map<String, String> snapshot(Path root) throws IOException {
+		Map<String, String> files = new TreeMap<>();
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : (Iterable<Path>)paths::iterator) {
+				if (Files.isRegularFile(path)) {
+					byte[] bytes = Files.readAllBytes(path);
+					String name = root.relativize(path).toString();
+
+					files.put(name, name.endsWith(".class") ? TestJars.describe(bytes) : new String(bytes, StandardCharsets.ISO_8859_1));
+				}
+			}
+		}
+
+		return files;
+	}
+}
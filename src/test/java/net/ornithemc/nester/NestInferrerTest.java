@@ -0,0 +1,41 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestInferrerTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void innerNamesDoNotClashWithExistingClasses() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a"));
+		entries.put("a$b.class", classFile("a$b"));
+		entries.put("b.class", classFile("b", cv -> cv.visitField(Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, "this$0", "La;", null, null).visitEnd()));
+
+		Nests nests = NestInferrer.infer(TestJars.jar(dir.resolve("in.jar"), entries));
+		Nest nest = nests.get("b");
+
+		assertNotNull(nest);
+		assertEquals(NestType.INNER, nest.type);
+		assertEquals("a", nest.enclClassName);
+		// a$b is taken, so b cannot be named a$b
+		assertEquals("b2", nest.innerName);
+	}
+}
@@ -0,0 +1,125 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.jar.SourceJar;
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NesterTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void cancelledJarIsNotWritten() throws IOException {
+		cancelAtEveryPoint(new Nester.Options(), "nested.jar", false);
+	}
+
+	@Test
+	public void cancelledJarIsLeftAlone() throws IOException {
+		cancelAtEveryPoint(new Nester.Options(), "nested.jar", true);
+	}
+
+	@Test
+	public void cancelledDirectoryIsNotCreated() throws IOException {
+		cancelAtEveryPoint(new Nester.Options().directory(true).index(true), "nested", false);
+	}
+
+	@Test
+	public void cancelledDirectoryIsLeftAlone() throws IOException {
+		cancelAtEveryPoint(new Nester.Options().directory(true).index(true), "nested", true);
+	}
+
+	/**
+	 * Cancel a job at each point it checks for cancellation in turn, and
+	 * check that the output directory is exactly as it was before.
+	 */
+	private void cancelAtEveryPoint(Nester.Options options, String fileName, boolean existing) throws IOException {
+		Path src = sourceJar();
+		Path out = Files.createDirectories(dir.resolve("out"));
+		Path dst = out.resolve(fileName);
+
+		if (existing) {
+			// without nests, so that the job has changes to write
+			Nester.of(options, Nests.empty()).apply(src, dst);
+		}
+
+		Nester nester = Nester.of(options, nests());
+		Map<String, String> before = snapshot(out);
+
+		for (int point = 0;; point++) {
+			AtomicInteger checks = new AtomicInteger();
+			int cancelPoint = point;
+
+			try {
+				nester.apply(new SourceJar(src), src, dst, ProgressListener.NONE, () -> checks.getAndIncrement() >= cancelPoint);
+			} catch (CancellationException e) {
+				assertEquals(before, snapshot(out));
+				continue;
+			}
+
+			// the job ran to completion, so every point was tried
+			assertTrue(point > 0);
+			assertNotEquals(before, snapshot(out));
+
+			break;
+		}
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "(Lb;)V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c"));
+		entries.put("d.class", classFile("d"));
+		entries.put("data/e.txt", "e".getBytes(StandardCharsets.UTF_8));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	private static Nests nests() {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "(Lb;)V", "1", 0));
+
+		return nests;
+	}
+
+	/**
+	 * Returns the relative path and contents of every file and
+	 * directory in the given directory.
+	 */
+	private static Map<String, String> snapshot(Path root) throws IOException {
+		Map<String, String> files = new TreeMap<>();
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : (Iterable<Path>)paths::iterator) {
+				String contents = Files.isRegularFile(path) ? new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1) : "/";
+				files.put(root.relativize(path).toString(), contents);
+			}
+		}
+
+		return files;
+	}
+}
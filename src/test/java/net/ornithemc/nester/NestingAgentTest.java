@@ -0,0 +1,86 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestingAgentTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void classesMatchNestedJarWithoutRemapping() throws IOException {
+		Path src = sourceJar();
+		Path dst = dir.resolve("out.jar");
+
+		Nester.nestJar(new Nester.Options().remap(false), src, dst, nests());
+
+		Map<String, byte[]> sources = TestJars.readJar(src);
+		Map<String, byte[]> nested = TestJars.readJar(dst);
+
+		NestingAgent agent = NestingAgent.of(src, nests());
+
+		for (String className : new String[] { "a", "b", "c" }) {
+			byte[] bytes = agent.transform(null, className, null, null, sources.get(className + ".class"));
+			assertArrayEquals(nested.get(className + ".class"), bytes);
+		}
+	}
+
+	@Test
+	public void untouchedClassesAreNotTransformed() throws IOException {
+		Path src = sourceJar();
+		NestingAgent agent = NestingAgent.of(src, nests());
+
+		assertNull(agent.transform(null, "d", null, null, TestJars.readJar(src).get("d.class")));
+		// classes defined at runtime have no name
+		assertNull(agent.transform(null, null, null, null, new byte[0]));
+	}
+
+	@Test
+	public void brokenClassesAreNotTransformed() throws IOException {
+		NestingAgent agent = NestingAgent.of(sourceJar(), nests());
+
+		// the error is logged, as the JVM would drop it
+		assertNull(agent.transform(null, "a", null, null, new byte[] { 1, 2, 3 }));
+	}
+
+	@Test
+	public void invalidArgumentsAreRejected() {
+		assertThrows(NesterException.class, () -> NestingAgent.agentmain("in.jar", null));
+		assertThrows(NesterException.class, () -> NestingAgent.agentmain(null, null));
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "()V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c", "b", cv -> { }));
+		entries.put("d.class", classFile("d", cv -> method(cv, "f", "(Lb;)V")));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	private static Nests nests() {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "()V", "1", 0));
+
+		return nests;
+	}
+}
@@ -0,0 +1,80 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.tinyremapper.OutputConsumerPath;
+import net.fabricmc.tinyremapper.TinyRemapper;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestingExtensionTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void remappedJarMatchesNestedJar() throws IOException {
+		Path src = sourceJar();
+		Path nestedDst = dir.resolve("nested.jar");
+		Path remappedDst = dir.resolve("remapped.jar");
+
+		Nester.nestJar(src, nestedDst, nests());
+
+		TinyRemapper remapper = TinyRemapper.newRemapper()
+			.extension(NestingExtension.of(src, nests()))
+			.build();
+
+		try (OutputConsumerPath oc = new OutputConsumerPath.Builder(remappedDst).build()) {
+			remapper.readInputs(src);
+			remapper.apply(oc);
+		} finally {
+			remapper.finish();
+		}
+
+		Map<String, byte[]> nested = TestJars.readJar(nestedDst);
+		Map<String, byte[]> remapped = TestJars.readJar(remappedDst);
+
+		assertEquals(nested.keySet(), remapped.keySet());
+
+		for (String name : nested.keySet()) {
+			assertEquals(TestJars.describe(nested.get(name)), TestJars.describe(remapped.get(name)));
+		}
+	}
+
+	@Test
+	public void nesterIsRequired() {
+		assertThrows(NesterException.class, () -> NestingExtension.of(null));
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "()V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c", "b", cv -> { }));
+		entries.put("d.class", classFile("d", cv -> method(cv, "f", "(Lb;)V")));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	private static Nests nests() {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "()V", "1", 0));
+
+		return nests;
+	}
+}
@@ -0,0 +1,159 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestingIndexTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void writeAndReadBack() throws IOException {
+		NestingIndex index = new NestingIndex();
+		index.add(new NestingIndex.Entry("a$Inner", "b", NestType.INNER, Collections.singletonList("a"), null, null));
+		index.add(new NestingIndex.Entry("a$Inner$1", "c", NestType.ANONYMOUS, Arrays.asList("a$Inner", "a"), "f", "(La$Inner;)V"));
+
+		NestingIndex read = roundTrip(index);
+
+		assertEquals(2, read.getEntries().size());
+
+		NestingIndex.Entry inner = read.get("a$Inner");
+		assertEquals("b", inner.originalName);
+		assertEquals(NestType.INNER, inner.type);
+		assertEquals(Collections.singletonList("a"), inner.outerClasses);
+		assertNull(inner.enclMethodName);
+		assertNull(inner.enclMethodDesc);
+
+		NestingIndex.Entry anonymous = read.getByOriginalName("c");
+		assertEquals("a$Inner$1", anonymous.name);
+		assertEquals(NestType.ANONYMOUS, anonymous.type);
+		assertEquals(Arrays.asList("a$Inner", "a"), anonymous.outerClasses);
+		assertEquals("f", anonymous.enclMethodName);
+		assertEquals("(La$Inner;)V", anonymous.enclMethodDesc);
+	}
+
+	@Test
+	public void invalidHeaderIsRejected() {
+		assertThrows(NesterException.class, () -> NestingIndex.read(new BufferedReader(new StringReader("nests\t2\n"))));
+	}
+
+	@Test
+	public void enclosingMethodIsRemapped() throws IOException {
+		Path src = sourceJar();
+		Path dst = dir.resolve("out.jar");
+
+		// heap budget 0 remaps with ASM, which needs no class path
+		Nester.nestJar(new Nester.Options().heapBudget(0).index(true), src, dst, nests());
+
+		NestingIndex index = NestingIndex.read(dst);
+		assertNotNull(index);
+
+		NestingIndex.Entry inner = index.getByOriginalName("b");
+		assertEquals("a$Inner", inner.name);
+		assertEquals(Collections.singletonList("a"), inner.outerClasses);
+
+		NestingIndex.Entry anonymous = index.getByOriginalName("c");
+		assertEquals("a$2", anonymous.name);
+		assertEquals(NestType.ANONYMOUS, anonymous.type);
+		assertEquals("f", anonymous.enclMethodName);
+		assertEquals("(La$Inner;)V", anonymous.enclMethodDesc);
+
+		// the index must agree with the nested classes
+		ClassNode outerClass = readClass(dst, "a");
+		boolean found = false;
+
+		for (MethodNode method : outerClass.methods) {
+			found |= method.name.equals(anonymous.enclMethodName) && method.desc.equals(anonymous.enclMethodDesc);
+		}
+
+		assertTrue(found);
+		assertEquals(anonymous.enclMethodDesc, readClass(dst, "a$2").outerMethodDesc);
+	}
+
+	@Test
+	public void directoryIndex() throws IOException {
+		Path src = sourceJar();
+		Path dst = dir.resolve("out");
+
+		Nester.nestJar(new Nester.Options().heapBudget(0).index(true).directory(true), src, dst, nests());
+
+		assertTrue(Files.isRegularFile(dst.resolve(NestingIndex.ENTRY_NAME)));
+		assertEquals("(La$Inner;)V", NestingIndex.read(dst).get("a$2").enclMethodDesc);
+	}
+
+	@Test
+	public void noIndex() throws IOException {
+		Path dst = dir.resolve("out.jar");
+
+		Nester.nestJar(new Nester.Options().heapBudget(0), sourceJar(), dst, nests());
+
+		assertNull(NestingIndex.read(dst));
+	}
+
+	private Path sourceJar() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> {
+			method(cv, "f", "(Lb;)V");
+			method(cv, "g", "()V");
+		}));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c"));
+
+		return TestJars.jar(dir.resolve("in.jar"), entries);
+	}
+
+	private static Nests nests() {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "(Lb;)V", "2", 0));
+		return nests;
+	}
+
+	private static NestingIndex roundTrip(NestingIndex index) throws IOException {
+		StringWriter sw = new StringWriter();
+
+		try (BufferedWriter bw = new BufferedWriter(sw)) {
+			index.write(bw);
+		}
+
+		return NestingIndex.read(new BufferedReader(new StringReader(sw.toString())));
+	}
+
+	private static ClassNode readClass(Path jar, String name) throws IOException {
+		try (JarFile jarFile = new JarFile(jar.toFile())) {
+			ClassNode clazz = new ClassNode();
+			new ClassReader(jarFile.getInputStream(jarFile.getJarEntry(name + ".class"))).accept(clazz, 0);
+			return clazz;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestingJobTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void classesAreRemappedWithTinyRemapper() throws IOException {
+		checkOutput(new Nester.Options(), "tiny.jar");
+	}
+
+	@Test
+	public void classesAreRemappedWithAsm() throws IOException {
+		// any class bytes go over a heap budget of 0
+		checkOutput(new Nester.Options().heapBudget(0), "asm.jar");
+	}
+
+	@Test
+	public void remappedClassesMatch() throws IOException {
+		Map<String, byte[]> tiny = nest(new Nester.Options(), "tiny.jar");
+		Map<String, byte[]> asm = nest(new Nester.Options().heapBudget(0), "asm.jar");
+
+		assertEquals(tiny.keySet(), asm.keySet());
+
+		for (String name : tiny.keySet()) {
+			assertEquals(TestJars.describe(tiny.get(name)), TestJars.describe(asm.get(name)));
+		}
+	}
+
+	@Test
+	public void shardsMatchOneShard() throws IOException {
+		Map<String, byte[]> expected = nest(new Nester.Options(), "one.jar");
+		Map<String, byte[]> sharded = nest(new Nester.Options().shards(3), "sharded.jar");
+
+		assertEquals(expected.keySet(), sharded.keySet());
+
+		for (String name : expected.keySet()) {
+			assertArrayEquals(expected.get(name), sharded.get(name));
+		}
+	}
+
+	@Test
+	public void shardsMatchOneShardWithoutRemapping() throws IOException {
+		Map<String, byte[]> expected = nest(new Nester.Options().remap(false), "one.jar");
+		Map<String, byte[]> sharded = nest(new Nester.Options().remap(false).shards(3), "sharded.jar");
+
+		assertEquals(expected.keySet(), sharded.keySet());
+
+		for (String name : expected.keySet()) {
+			assertArrayEquals(expected.get(name), sharded.get(name));
+		}
+	}
+
+	@Test
+	public void failedShardFailsTheJob() {
+		// the child JVM does not start with an unknown option
+		Nester.Options options = new Nester.Options().shards(3).shardJvmArgs("-XX:+NoSuchNesterOption");
+		NesterException e = assertThrows(NesterException.class, () -> nest(options, "failed.jar"));
+
+		assertTrue(e.getMessage().contains("failed with exit code"));
+		assertFalse(Files.exists(dir.resolve("failed.jar")));
+	}
+
+	private void checkOutput(Nester.Options options, String fileName) throws IOException {
+		Map<String, byte[]> sources = sources();
+		Map<String, byte[]> output = nest(options, fileName);
+
+		assertFalse(output.containsKey("b.class"));
+		assertTrue(output.containsKey("a$Inner.class"));
+
+		// classes that are not nested and do not reference
+		// any renamed class are passed through untouched
+		assertArrayEquals(sources.get("e.class"), output.get("e.class"));
+
+		ClassNode c = read(output.get("c.class"));
+		assertEquals("(La$Inner;)V", c.methods.get(0).desc);
+
+		// the L type parameter must not hide the reference to b
+		ClassNode d = read(output.get("d.class"));
+		assertEquals("<L:La$Inner;>Ljava/lang/Object;", d.signature);
+	}
+
+	private Map<String, byte[]> nest(Nester.Options options, String fileName) throws IOException {
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+
+		Path src = TestJars.jar(dir.resolve("in.jar"), sources());
+		Path dst = dir.resolve(fileName);
+
+		Nester.nestJar(options.verify(true), src, dst, nests);
+
+		return TestJars.readJar(dst);
+	}
+
+	private static Map<String, byte[]> sources() {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a"));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c", cv -> method(cv, "f", "(Lb;)V")));
+		entries.put("d.class", classFile("d", "<L:Lb;>Ljava/lang/Object;", "java/lang/Object", cv -> { }));
+		entries.put("e.class", classFile("e", cv -> method(cv, "f", "(Ld;)V")));
+
+		return entries;
+	}
+
+	private static ClassNode read(byte[] bytes) {
+		ClassNode clazz = new ClassNode();
+		new ClassReader(bytes).accept(clazz, 0);
+
+		return clazz;
+	}
+}
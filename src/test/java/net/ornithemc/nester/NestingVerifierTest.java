@@ -0,0 +1,147 @@
+package net.ornithemc.nester;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static net.ornithemc.nester.TestJars.method;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import net.ornithemc.nester.nest.Nest;
+import net.ornithemc.nester.nest.NestType;
+import net.ornithemc.nester.nest.Nests;
+
+public class NestingVerifierTest {
+
+	private static final int INNER_ACCESS = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void nestedJarPasses() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "(Lb;)V")));
+		entries.put("b.class", classFile("b"));
+		entries.put("c.class", classFile("c"));
+
+		Nests nests = Nests.empty();
+		nests.add(new Nest(NestType.INNER, "b", "a", null, null, "Inner", INNER_ACCESS));
+		nests.add(new Nest(NestType.ANONYMOUS, "c", "a", "f", "(Lb;)V", "1", 0));
+
+		Path src = TestJars.jar(dir.resolve("in.jar"), entries);
+
+		// verification runs as part of nesting, and throws on any problem
+		Nester.nestJar(new Nester.Options().heapBudget(0).verify(true), src, dir.resolve("out.jar"), nests);
+		Nester.nestJar(new Nester.Options().remap(false).verify(true), src, dir.resolve("out2.jar"), nests);
+		Nester.nestJar(new Nester.Options().heapBudget(0).verify(true).directory(true), src, dir.resolve("out"), nests);
+	}
+
+	@Test
+	public void consistentClassesPass() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> {
+			method(cv, "f", "()V");
+			cv.visitInnerClass("a$Inner", "a", "Inner", INNER_ACCESS);
+			cv.visitInnerClass("a$1", null, null, 0);
+		}));
+		entries.put("a$Inner.class", classFile("a$Inner", cv -> cv.visitInnerClass("a$Inner", "a", "Inner", INNER_ACCESS)));
+		entries.put("a$1.class", classFile("a$1", cv -> {
+			cv.visitOuterClass("a", "f", "()V");
+			cv.visitInnerClass("a$1", null, null, 0);
+		}));
+
+		verify(entries, Collections.emptyMap(), "a", "a$Inner", "a$1");
+	}
+
+	@Test
+	public void mismatchedInnerClassesEntry() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> cv.visitInnerClass("a$Inner", "a", "Inner", Opcodes.ACC_PRIVATE)));
+		entries.put("a$Inner.class", classFile("a$Inner", cv -> cv.visitInnerClass("a$Inner", "a", "Inner", INNER_ACCESS)));
+
+		assertProblem(entries, Collections.emptyMap(), "does not match the entry in", "a", "a$Inner");
+	}
+
+	@Test
+	public void missingInnerClassesEntry() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a"));
+		entries.put("a$Inner.class", classFile("a$Inner", cv -> cv.visitInnerClass("a$Inner", "a", "Inner", INNER_ACCESS)));
+
+		assertProblem(entries, Collections.emptyMap(), "is missing from a", "a$Inner");
+	}
+
+	@Test
+	public void missingEnclosingMethod() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> {
+			method(cv, "f", "(I)V");
+			cv.visitInnerClass("a$1", null, null, 0);
+		}));
+		entries.put("a$1.class", classFile("a$1", cv -> {
+			cv.visitOuterClass("a", "f", "()V");
+			cv.visitInnerClass("a$1", null, null, 0);
+		}));
+
+		assertProblem(entries, Collections.emptyMap(), "enclosing method a.f()V is missing", "a$1");
+	}
+
+	@Test
+	public void innerNameMustMatchClassName() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> cv.visitInnerClass("a$Inner", "a", "Other", INNER_ACCESS)));
+		entries.put("a$Inner.class", classFile("a$Inner", cv -> cv.visitInnerClass("a$Inner", "a", "Other", INNER_ACCESS)));
+
+		assertProblem(entries, Collections.emptyMap(), "does not match the class name", "a$Inner");
+	}
+
+	@Test
+	public void referencesToOldNames() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> method(cv, "f", "(Lb;)V")));
+
+		assertProblem(entries, Collections.singletonMap("b", "a$Inner"), "references old class names [b]", "a");
+	}
+
+	@Test
+	public void referencesToOldNamesInSignatures() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> cv.visitField(Opcodes.ACC_PUBLIC, "f", "Lx;", "Lx<TT;>.y;", null).visitEnd()));
+		entries.put("c.class", classFile("c", cv -> {
+			MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "f", "()V", "<L:Lb;>()V", null);
+			mv.visitEnd();
+		}));
+
+		assertProblem(entries, Collections.singletonMap("x$y", "x$Inner"), "references old class names [x$y]", "a");
+		assertProblem(entries, Collections.singletonMap("b", "a$Inner"), "references old class names [b]", "c");
+	}
+
+	@Test
+	public void missingClassFile() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a"));
+
+		assertProblem(entries, Collections.emptyMap(), "class file is missing", "a", "b");
+	}
+
+	private void verify(Map<String, byte[]> entries, Map<String, String> renames, String... classNames) throws IOException {
+		Path jar = TestJars.jar(dir.resolve("verify.jar"), entries);
+		new NestingVerifier(new Nester.Options(), jar, renames).verify(Arrays.asList(classNames), ProgressListener.NONE);
+	}
+
+	private void assertProblem(Map<String, byte[]> entries, Map<String, String> renames, String problem, String... classNames) {
+		NesterException e = assertThrows(NesterException.class, () -> verify(entries, renames, classNames));
+		assertTrue(e.getMessage().contains(problem));
+	}
+}
@@ -0,0 +1,35 @@
+package net.ornithemc.nester;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class SymbolTableTest {
+
+	@Test
+	public void internReturnsCanonicalInstance() {
+		SymbolTable symbols = new SymbolTable();
+		String name = symbols.intern(new String("a/B"));
+
+		assertSame(name, symbols.intern(new String("a/B")));
+		assertNull(symbols.intern((String)null));
+	}
+
+	@Test
+	public void scopeSharesNamesOfParent() {
+		SymbolTable symbols = new SymbolTable();
+		String name = symbols.intern(new String("a/B"));
+
+		assertSame(name, symbols.scope().intern(new String("a/B")));
+	}
+
+	@Test
+	public void scopeDoesNotAddToParent() {
+		SymbolTable symbols = new SymbolTable();
+		String name = symbols.scope().intern(new String("a/C"));
+
+		assertNotSame(name, symbols.intern(new String("a/C")));
+	}
+}
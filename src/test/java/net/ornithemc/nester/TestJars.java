@@ -0,0 +1,121 @@
+package net.ornithemc.nester;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Builds class files and jars for tests.
+ */
+public final class TestJars {
+
+	private TestJars() {
+	}
+
+	/**
+	 * Returns a class file for a public class with the given name that
+	 * extends Object, with members added by the given consumer.
+	 */
+	public static byte[] classFile(String name, Consumer<ClassVisitor> members) {
+		return classFile(name, "java/lang/Object", members);
+	}
+
+	public static byte[] classFile(String name, String superName, Consumer<ClassVisitor> members) {
+		return classFile(name, null, superName, members);
+	}
+
+	public static byte[] classFile(String name, String signature, String superName, Consumer<ClassVisitor> members) {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, signature, superName, null);
+		members.accept(writer);
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	public static byte[] classFile(String name) {
+		return classFile(name, cv -> { });
+	}
+
+	/**
+	 * Add an empty method with the given name and descriptor.
+	 */
+	public static void method(ClassVisitor cv, String name, String desc) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, desc, null, null);
+		mv.visitCode();
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * Write the given entries to a jar at the given path, in order.
+	 */
+	public static Path jar(Path path, Map<String, byte[]> entries) throws IOException {
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(path.toFile()))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				jos.putNextEntry(new JarEntry(entry.getKey()));
+				jos.write(entry.getValue());
+				jos.closeEntry();
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * Read the entries of the jar at the given path, in order.
+	 */
+	public static Map<String, byte[]> readJar(Path path) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		try (JarInputStream jis = new JarInputStream(new FileInputStream(path.toFile()))) {
+			for (JarEntry entry; (entry = jis.getNextJarEntry()) != null;) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+
+				for (int n; (n = jis.read(buffer)) > 0;) {
+					bytes.write(buffer, 0, n);
+				}
+
+				entries.put(entry.getName(), bytes.toByteArray());
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Describe the names, signatures and nesting attributes of the given
+	 * class file, to compare classes that need not be byte for byte equal.
+	 */
+	public static String describe(byte[] bytes) {
+		ClassNode clazz = new ClassNode();
+		new ClassReader(bytes).accept(clazz, 0);
+
+		StringBuilder sb = new StringBuilder(clazz.name).append(' ').append(clazz.signature);
+
+		sb.append(' ').append(clazz.outerClass).append('.').append(clazz.outerMethod).append(clazz.outerMethodDesc);
+		clazz.fields.forEach(field -> sb.append(' ').append(field.name).append(field.desc).append(field.signature));
+		clazz.methods.forEach(method -> sb.append(' ').append(method.name).append(method.desc).append(method.signature));
+		clazz.innerClasses.forEach(inner -> sb.append(' ').append(inner.name).append(inner.outerName).append(inner.innerName).append(inner.access));
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,51 @@
+package net.ornithemc.nester.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class EntryBuffersTest {
+
+	@Test
+	public void readsLargeEntries() throws IOException {
+		byte[] bytes = new byte[300 * 1024];
+		new Random(0).nextBytes(bytes);
+
+		EntryBuffers buffers = EntryBuffers.get();
+		int length = buffers.read(new ByteArrayInputStream(bytes));
+
+		assertEquals(bytes.length, length);
+		assertArrayEquals(bytes, Arrays.copyOf(buffers.entry(), length));
+	}
+
+	@Test
+	public void shrinksAfterLargeEntries() throws IOException {
+		EntryBuffers buffers = EntryBuffers.get();
+
+		buffers.read(new ByteArrayInputStream(new byte[1024 * 1024]));
+		int length = buffers.read(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+
+		assertEquals(3, length);
+		assertEquals(64 * 1024, buffers.entry().length);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOf(buffers.entry(), length));
+	}
+
+	@Test
+	public void copiesStreams() throws IOException {
+		byte[] bytes = new byte[20000];
+		new Random(1).nextBytes(bytes);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		long length = EntryBuffers.get().copy(new ByteArrayInputStream(bytes), os);
+
+		assertEquals(bytes.length, length);
+		assertArrayEquals(bytes, os.toByteArray());
+	}
+}
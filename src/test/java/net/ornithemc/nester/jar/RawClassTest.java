@@ -0,0 +1,149 @@
+package net.ornithemc.nester.jar;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class RawClassTest {
+
+	private static final String STRING = "h\u00e9llo\u0000\ud834\udd1e";
+
+	@Test
+	public void header() {
+		RawClass clazz = RawClass.read(classFile());
+
+		assertEquals("p/A", clazz.getName());
+		assertEquals("p/Base", clazz.getSuperName());
+		assertArrayEquals(new String[] { "p/I", "p/J" }, clazz.getInterfaces());
+		assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, clazz.getAccess());
+	}
+
+	@Test
+	public void members() {
+		RawClass clazz = RawClass.read(classFile());
+
+		assertEquals(2, clazz.getFieldCount());
+		assertEquals("this$0", clazz.getFieldName(0));
+		assertEquals("Lp/Outer;", clazz.getFieldDesc(0));
+		assertEquals(Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, clazz.getFieldAccess(0));
+		assertEquals("x", clazz.getFieldName(1));
+
+		assertEquals(1, clazz.getMethodCount());
+		assertEquals("run", clazz.getMethodName(0));
+		assertEquals("()V", clazz.getMethodDesc(0));
+		assertEquals(Opcodes.ACC_PUBLIC, clazz.getMethodAccess(0));
+	}
+
+	@Test
+	public void constantPool() {
+		RawClass clazz = RawClass.read(classFile());
+
+		Set<String> utf8 = new HashSet<>();
+		Set<String> classes = new HashSet<>();
+		Set<String> methodRefs = new HashSet<>();
+
+		// long and double entries take up two slots, which
+		// would shift every later entry if not skipped
+		for (int i = 1; i < clazz.getConstantCount(); i++) {
+			if (clazz.isUtf8(i)) {
+				utf8.add(clazz.getUtf8(i));
+			}
+			if (clazz.isClass(i)) {
+				classes.add(clazz.getClass(i));
+			}
+			if (clazz.isMethodRef(i)) {
+				methodRefs.add(clazz.getMemberRefOwner(i) + "." + clazz.getMemberRefName(i) + clazz.getMemberRefDesc(i));
+			}
+		}
+
+		assertTrue(utf8.contains(STRING));
+		assertTrue(utf8.contains("(Lp/Z;)V"));
+		assertTrue(classes.contains("p/A"));
+		assertTrue(classes.contains("p/Y"));
+		assertTrue(methodRefs.contains("p/Y.m(Lp/Z;)V"));
+		assertTrue(methodRefs.contains("p/I.n()V"));
+	}
+
+	@Test
+	public void utf8Queries() {
+		RawClass clazz = RawClass.read(classFile());
+
+		assertTrue(clazz.hasUtf8Prefix("this$"));
+		assertFalse(clazz.hasUtf8Prefix("val$"));
+
+		for (int i = 1; i < clazz.getConstantCount(); i++) {
+			if (clazz.isUtf8(i)) {
+				String s = clazz.getUtf8(i);
+				boolean expected = s.equals("Lp/Outer;") || s.equals("(Lp/Z;)V");
+
+				assertEquals(expected, clazz.utf8MayContainClassName(i));
+			}
+		}
+	}
+
+	@Test
+	public void readsAtOffset() {
+		byte[] bytes = classFile();
+		byte[] padded = new byte[bytes.length + 20];
+		System.arraycopy(bytes, 0, padded, 7, bytes.length);
+
+		RawClass clazz = RawClass.read(padded, 7, bytes.length);
+
+		assertEquals("p/A", clazz.getName());
+		assertEquals("run", clazz.getMethodName(0));
+	}
+
+	@Test
+	public void objectHasNoSuperClass() {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "java/lang/Object", null, null, null);
+		writer.visitEnd();
+
+		assertNull(RawClass.read(writer.toByteArray()).getSuperName());
+	}
+
+	@Test
+	public void rejectsOtherFiles() {
+		assertThrows(IllegalArgumentException.class, () -> RawClass.read(new byte[] { 'P', 'K', 3, 4, 0, 0, 0, 0, 0, 0, 0, 0 }));
+		assertThrows(IllegalArgumentException.class, () -> RawClass.read(new byte[] { (byte)0xCA, (byte)0xFE }));
+	}
+
+	private static byte[] classFile() {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "p/A", null, "p/Base", new String[] { "p/I", "p/J" });
+		writer.visitField(Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, "this$0", "Lp/Outer;", null, null).visitEnd();
+		writer.visitField(Opcodes.ACC_PRIVATE, "x", "I", null, null).visitEnd();
+
+		MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(1234567890123L);
+		mv.visitInsn(Opcodes.POP2);
+		mv.visitLdcInsn(3.5D);
+		mv.visitInsn(Opcodes.POP2);
+		mv.visitLdcInsn(STRING);
+		mv.visitInsn(Opcodes.POP);
+		mv.visitInsn(Opcodes.ACONST_NULL);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "p/Y", "m", "(Lp/Z;)V", false);
+		mv.visitInsn(Opcodes.ACONST_NULL);
+		mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "p/I", "n", "()V", true);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+}
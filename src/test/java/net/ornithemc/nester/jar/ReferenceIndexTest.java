@@ -0,0 +1,86 @@
+package net.ornithemc.nester.jar;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class ReferenceIndexTest {
+
+	@Test
+	public void typeParameterIsNotAClassName() {
+		// a type parameter named L looks like the start of a class type
+		Set<String> refs = scan(classFile("<L:Lb;>Ljava/lang/Object;", null, null));
+
+		assertTrue(refs.contains("b"));
+		assertFalse(refs.contains("L:Lb"));
+	}
+
+	@Test
+	public void genericBounds() {
+		Set<String> refs = scan(classFile(null, null, "<T::Lc;:Ld;>(Le<+Lf;-Lg;*>;[TT;)TT;^Lh;"));
+
+		assertTrue(refs.containsAll(Arrays.asList("c", "d", "e", "f", "g", "h")));
+	}
+
+	@Test
+	public void innerClassTypes() {
+		Set<String> refs = scan(classFile(null, "Lx<TT;>.y<Lz;>.w;", null));
+
+		assertTrue(refs.containsAll(Arrays.asList("x", "x$y", "x$y$w", "z")));
+	}
+
+	@Test
+	public void arrayClassConstants() {
+		ClassWriter writer = new ClassWriter(0);
+
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "p/A", null, "java/lang/Object", null);
+		writer.newClass("[[Lq;");
+		writer.visitEnd();
+
+		assertTrue(scan(writer.toByteArray()).contains("q"));
+	}
+
+	@Test
+	public void referencesAreFiltered() {
+		ReferenceIndex index = new ReferenceIndex();
+		byte[] bytes = classFile("<L:Lb;>Lc;", null, null);
+
+		assertEquals("p/A", index.add(bytes, 0, bytes.length, name -> !name.equals("c")));
+		assertTrue(index.referencesAny("p/A", Collections.singleton("b")));
+		assertFalse(index.referencesAny("p/A", Collections.singleton("c")));
+		assertFalse(index.referencesAny("p/B", Collections.singleton("b")));
+		assertEquals(new HashSet<>(), index.getReferences("p/B"));
+	}
+
+	private static Set<String> scan(byte[] bytes) {
+		return ReferenceIndex.scan(RawClass.read(bytes), name -> true);
+	}
+
+	private static byte[] classFile(String signature, String fieldSignature, String methodSignature) {
+		ClassWriter writer = new ClassWriter(0);
+
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "p/A", signature, "java/lang/Object", null);
+
+		if (fieldSignature != null) {
+			writer.visitField(Opcodes.ACC_PUBLIC, "f", "Ljava/lang/Object;", fieldSignature, null).visitEnd();
+		}
+		if (methodSignature != null) {
+			MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "m", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", methodSignature, null);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,137 @@
+package net.ornithemc.nester.jar;
+
+import static net.ornithemc.nester.TestJars.classFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import net.ornithemc.nester.SymbolTable;
+import net.ornithemc.nester.TestJars;
+
+public class SourceJarTest {
+
+	@TempDir
+	public Path dir;
+
+	@Test
+	public void classesAreSortedByLengthThenName() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		for (String name : new String[] { "b", "a$1", "ab", "a", "a$10" }) {
+			entries.put(name + ".class", classFile(name));
+		}
+
+		Path src = TestJars.jar(dir.resolve("in.jar"), entries);
+
+		for (boolean parallel : new boolean[] { false, true }) {
+			List<String> names = new ArrayList<>();
+
+			for (ClassNode clazz : new SourceJar(src, new SymbolTable(), parallel).getClasses()) {
+				names.add(clazz.name);
+			}
+
+			assertEquals(Arrays.asList("a", "b", "ab", "a$1", "a$10"), names);
+		}
+	}
+
+	@Test
+	public void firstOfDuplicateClassesIsKept() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		for (int i = 0; i < 200; i++) {
+			int field = i;
+
+			// the same class under different entry names
+			entries.put("copy" + i + "/a.class", classFile("a", cv -> cv.visitField(Opcodes.ACC_PUBLIC, "f" + field, "I", null, null)));
+		}
+
+		Path src = TestJars.jar(dir.resolve("dup.jar"), entries);
+
+		for (boolean parallel : new boolean[] { false, true }) {
+			SourceJar jar = new SourceJar(src, new SymbolTable(), parallel);
+
+			assertEquals(1, jar.getClasses().size());
+			assertEquals("f0", jar.getClass("a").fields.get(0).name);
+		}
+	}
+
+	@Test
+	public void firstOfDuplicateEntriesIsKept() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> cv.visitField(Opcodes.ACC_PUBLIC, "f0", "I", null, null)));
+		entries.put("x.class", classFile("a", cv -> cv.visitField(Opcodes.ACC_PUBLIC, "f1", "I", null, null)));
+
+		Path src = TestJars.jar(dir.resolve("dup.jar"), entries);
+
+		// a jar cannot be written with duplicate entries, so rename
+		// the second entry in its headers after the fact
+		byte[] bytes = Files.readAllBytes(src);
+		byte[] from = "x.class".getBytes(StandardCharsets.UTF_8);
+		byte[] to = "a.class".getBytes(StandardCharsets.UTF_8);
+
+		for (int i = 0; i <= bytes.length - from.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + from.length), from)) {
+				System.arraycopy(to, 0, bytes, i, to.length);
+			}
+		}
+
+		Files.write(src, bytes);
+
+		for (boolean parallel : new boolean[] { false, true }) {
+			SourceJar jar = new SourceJar(src, new SymbolTable(), parallel);
+
+			assertEquals(1, jar.getClasses().size());
+			assertEquals("f0", jar.getClass("a").fields.get(0).name);
+		}
+	}
+
+	@Test
+	public void getMethod() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> {
+			TestJars.method(cv, "f", "()V");
+			TestJars.method(cv, "f", "(I)V");
+		}));
+
+		SourceJar jar = new SourceJar(TestJars.jar(dir.resolve("in.jar"), entries));
+
+		assertEquals("(I)V", jar.getMethod("a", "f", "(I)V").desc);
+		assertNull(jar.getMethod("a", "f", "(J)V"));
+		assertNull(jar.getMethod("b", "f", "()V"));
+	}
+
+	@Test
+	public void getMethodWithoutNameOrDescriptor() throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("a.class", classFile("a", cv -> TestJars.method(cv, "f", "()V")));
+
+		SourceJar jar = new SourceJar(TestJars.jar(dir.resolve("in.jar"), entries));
+
+		// nests of inner classes have no enclosing method
+		assertNull(jar.getMethod("a", null, null));
+		assertNull(jar.getMethod("a", "f", null));
+		assertNull(jar.getMethod("a", null, "()V"));
+	}
+
+	@Test
+	public void classNameComparator() {
+		assertTrue(SourceJar.CLASS_NAME_COMPARATOR.compare("z", "aa") < 0);
+		assertTrue(SourceJar.CLASS_NAME_COMPARATOR.compare("ab", "aa") > 0);
+		assertEquals(0, SourceJar.CLASS_NAME_COMPARATOR.compare("a$1", "a$1"));
+	}
+}
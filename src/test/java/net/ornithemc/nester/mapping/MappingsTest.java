@@ -0,0 +1,61 @@
+package net.ornithemc.nester.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import net.ornithemc.nester.NesterException;
+
+public class MappingsTest {
+
+	@Test
+	public void mapsClassNamesInDescriptors() {
+		Mappings mappings = mappings();
+
+		assertEquals("(Lnet/Foo;ILjava/lang/String;[Lnet/Bar;)Lnet/Foo;", mappings.mapDesc("(La;ILjava/lang/String;[Lb;)La;"));
+		assertEquals("[[Lnet/Bar;", mappings.mapDesc("[[Lb;"));
+	}
+
+	@Test
+	public void unmappedDescriptorIsReturnedAsIs() {
+		String desc = "(ILjava/lang/Object;J)V";
+
+		assertSame(desc, mappings().mapDesc(desc));
+	}
+
+	@Test
+	public void classNamesMayContainL() {
+		Mappings mappings = Mappings.empty();
+		mappings.addClass("L", "net/Long");
+		mappings.addClass("aL", "net/Al");
+
+		assertEquals("(Lnet/Long;Lnet/Al;)V", mappings.mapDesc("(LL;LaL;)V"));
+	}
+
+	@Test
+	public void unterminatedClassNameIsRejected() {
+		Mappings mappings = mappings();
+
+		assertThrows(NesterException.class, () -> mappings.mapDesc("(La"));
+		assertThrows(NesterException.class, () -> mappings.mapDesc("Lb"));
+	}
+
+	@Test
+	public void mapsMethodsByOwnerAndDescriptor() {
+		Mappings mappings = mappings();
+		mappings.addMethod("a", "m", "()V", "run");
+
+		assertEquals("run", mappings.mapMethod("a", "m", "()V"));
+		assertEquals("m", mappings.mapMethod("a", "m", "(I)V"));
+		assertEquals("m", mappings.mapMethod("b", "m", "()V"));
+	}
+
+	private static Mappings mappings() {
+		Mappings mappings = Mappings.empty();
+		mappings.addClass("a", "net/Foo");
+		mappings.addClass("b", "net/Bar");
+		return mappings;
+	}
+}
@@ -0,0 +1,59 @@
+package net.ornithemc.nester.nest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class NestsDiffTest {
+
+	@Test
+	public void identicalNestsHaveNoDiff() {
+		Nests from = nests(inner("a", "b", "Inner"), anonymous("c", "b", "m", "()V", "1"));
+		Nests to = nests(inner("a", "b", "Inner"), anonymous("c", "b", "m", "()V", "1"));
+
+		assertTrue(NestsDiff.of(from, to).isEmpty());
+	}
+
+	@Test
+	public void addedRemovedAndChangedNests() {
+		Nests from = nests(inner("a", "b", "Inner"), inner("c", "b", "Other"));
+		Nests to = nests(inner("a", "b", "Renamed"), inner("d", "b", "New"));
+
+		NestsDiff diff = NestsDiff.of(from, to);
+
+		assertEquals(1, diff.getAdded().size());
+		assertEquals("d", diff.getAdded().get(0).className);
+		assertEquals(1, diff.getRemoved().size());
+		assertEquals("c", diff.getRemoved().get(0).className);
+		assertEquals(1, diff.getChanged().size());
+		assertEquals("Inner", diff.getChanged().get(0).from.innerName);
+		assertEquals("Renamed", diff.getChanged().get(0).to.innerName);
+	}
+
+	@Test
+	public void accessChangeIsAChange() {
+		Nests from = nests(new Nest(NestType.INNER, "a", "b", null, null, "Inner", 1));
+		Nests to = nests(new Nest(NestType.INNER, "a", "b", null, null, "Inner", 9));
+
+		assertEquals(1, NestsDiff.of(from, to).getChanged().size());
+	}
+
+	static Nests nests(Nest... nests) {
+		Nests result = Nests.empty();
+
+		for (Nest nest : nests) {
+			result.add(nest);
+		}
+
+		return result;
+	}
+
+	static Nest inner(String className, String enclClassName, String innerName) {
+		return new Nest(NestType.INNER, className, enclClassName, null, null, innerName, 1);
+	}
+
+	static Nest anonymous(String className, String enclClassName, String enclMethodName, String enclMethodDesc, String innerName) {
+		return new Nest(NestType.ANONYMOUS, className, enclClassName, enclMethodName, enclMethodDesc, innerName, 0);
+	}
+}
@@ -0,0 +1,64 @@
+package net.ornithemc.nester.nest;
+
+import static net.ornithemc.nester.nest.NestsDiffTest.inner;
+import static net.ornithemc.nester.nest.NestsDiffTest.nests;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class NestsMergeTest {
+
+	@Test
+	public void takesChangesFromBothSides() {
+		Nests base = nests(inner("a", "x", "A"), inner("b", "x", "B"), inner("c", "x", "C"));
+		Nests left = nests(inner("a", "x", "LeftA"), inner("b", "x", "B"), inner("c", "x", "C"));
+		Nests right = nests(inner("a", "x", "A"), inner("b", "x", "RightB"), inner("d", "x", "D"));
+
+		NestsMerge merge = NestsMerge.of(base, left, right);
+
+		assertFalse(merge.hasConflicts());
+		merge.checkConflicts();
+
+		Nests merged = merge.getMerged();
+
+		assertEquals("LeftA", merged.get("a").innerName);
+		assertEquals("RightB", merged.get("b").innerName);
+		// removed on the right, unchanged on the left
+		assertNull(merged.get("c"));
+		assertEquals("D", merged.get("d").innerName);
+	}
+
+	@Test
+	public void sameChangeOnBothSidesIsNoConflict() {
+		Nests base = nests(inner("a", "x", "A"));
+		Nests left = nests(inner("a", "x", "New"));
+		Nests right = nests(inner("a", "x", "New"));
+
+		NestsMerge merge = NestsMerge.of(base, left, right);
+
+		assertFalse(merge.hasConflicts());
+		assertEquals("New", merge.getMerged().get("a").innerName);
+	}
+
+	@Test
+	public void conflictingChangesKeepBase() {
+		Nests base = nests(inner("a", "x", "A"));
+		Nests left = nests(inner("a", "x", "Left"));
+		Nests right = nests(inner("a", "x", "Right"));
+
+		NestsMerge merge = NestsMerge.of(base, left, right);
+
+		assertTrue(merge.hasConflicts());
+		assertEquals(1, merge.getConflicts().size());
+		assertEquals("a", merge.getConflicts().get(0).className);
+		assertEquals("A", merge.getMerged().get("a").innerName);
+
+		NestsMerge.ConflictException e = assertThrows(NestsMerge.ConflictException.class, merge::checkConflicts);
+		assertSame(merge, e.getMerge());
+	}
+}
@@ -0,0 +1,81 @@
+package net.ornithemc.nester.nest;
+
+import static net.ornithemc.nester.nest.NestsDiffTest.anonymous;
+import static net.ornithemc.nester.nest.NestsDiffTest.inner;
+import static net.ornithemc.nester.nest.NestsDiffTest.nests;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import net.ornithemc.nester.NesterException;
+import net.ornithemc.nester.mapping.Mappings;
+
+public class NestsRemapperTest {
+
+	@Test
+	public void remapsClassesAndEnclosingMethods() {
+		Nests nests = nests(inner("a", "b", "Inner"), anonymous("c", "b", "m", "(La;)V", "1"));
+		Nests remapped = NestsRemapper.remap(nests, mappings());
+
+		Nest inner = remapped.get("net/Foo");
+		assertEquals("net/Bar", inner.enclClassName);
+		assertNull(inner.enclMethodName);
+		assertEquals("Inner", inner.innerName);
+
+		Nest anonymous = remapped.get("net/Baz");
+		assertEquals("net/Bar", anonymous.enclClassName);
+		assertEquals("run", anonymous.enclMethodName);
+		assertEquals("(Lnet/Foo;)V", anonymous.enclMethodDesc);
+		assertEquals(NestType.ANONYMOUS, anonymous.type);
+	}
+
+	@Test
+	public void streamingMatchesInMemory() throws IOException {
+		Nests nests = nests(inner("a", "b", "Inner"), anonymous("c", "b", "m", "(La;)V", "1"), inner("d", "a", "Unmapped"));
+
+		StringWriter expected = new StringWriter();
+
+		try (BufferedWriter bw = new BufferedWriter(expected)) {
+			NesterIo.write(NestsRemapper.remap(nests, mappings()), bw);
+		}
+
+		StringWriter src = new StringWriter();
+
+		try (BufferedWriter bw = new BufferedWriter(src)) {
+			NesterIo.write(nests, bw);
+		}
+
+		StringWriter actual = new StringWriter();
+
+		try (BufferedReader br = new BufferedReader(new StringReader(src.toString()));
+			BufferedWriter bw = new BufferedWriter(actual)) {
+			NestsRemapper.remap(br, bw, mappings());
+		}
+
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void malformedDescriptorIsReported() {
+		Nests nests = nests(anonymous("c", "b", "m", "(La", "1"));
+
+		assertThrows(NesterException.class, () -> NestsRemapper.remap(nests, mappings()));
+	}
+
+	private static Mappings mappings() {
+		Mappings mappings = Mappings.empty();
+		mappings.addClass("a", "net/Foo");
+		mappings.addClass("b", "net/Bar");
+		mappings.addClass("c", "net/Baz");
+		mappings.addMethod("b", "m", "(La;)V", "run");
+		return mappings;
+	}
+}
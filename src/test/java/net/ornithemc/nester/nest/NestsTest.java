@@ -0,0 +1,103 @@
+package net.ornithemc.nester.nest;
+
+import static net.ornithemc.nester.nest.NestsDiffTest.anonymous;
+import static net.ornithemc.nester.nest.NestsDiffTest.inner;
+import static net.ornithemc.nester.nest.NestsDiffTest.nests;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class NestsTest {
+
+	@Test
+	public void children() {
+		Nests nests = nests(inner("b", "a", "B"), anonymous("c", "a", "m", "()V", "1"), inner("d", "b", "D"));
+
+		assertEquals(names("b", "c"), names(nests.getChildren("a")));
+		assertEquals(names("d"), names(nests.getChildren("b")));
+		assertTrue(nests.getChildren("d").isEmpty());
+	}
+
+	@Test
+	public void enclosedByMethod() {
+		Nests nests = nests(
+			anonymous("c", "a", "m", "()V", "1"),
+			anonymous("d", "a", "m", "()V", "2"),
+			anonymous("e", "a", "m", "(I)V", "3"),
+			anonymous("f", "b", "m", "()V", "1"),
+			inner("g", "a", "G")
+		);
+
+		assertEquals(names("c", "d"), names(nests.getEnclosedBy("a", "m", "()V")));
+		assertEquals(names("e"), names(nests.getEnclosedBy("a", "m", "(I)V")));
+		assertEquals(names("f"), names(nests.getEnclosedBy("b", "m", "()V")));
+		assertTrue(nests.getEnclosedBy("a", "n", "()V").isEmpty());
+		assertTrue(nests.getEnclosedBy("a", null, null).isEmpty());
+	}
+
+	@Test
+	public void parentDepthAndOutermostClass() {
+		Nests nests = nests(inner("d", "c", "D"), inner("c", "b", "C"), inner("b", "a", "B"));
+
+		assertEquals("c", nests.getParent("d").className);
+		assertNull(nests.getParent("b"));
+		assertNull(nests.getParent("a"));
+
+		assertEquals(3, nests.getDepth("d"));
+		assertEquals(1, nests.getDepth("b"));
+		assertEquals(0, nests.getDepth("a"));
+
+		assertEquals("a", nests.getOutermostClass("d"));
+		assertEquals("a", nests.getOutermostClass("b"));
+		assertEquals("x", nests.getOutermostClass("x"));
+	}
+
+	@Test
+	public void indexIsUpdatedByAdd() {
+		Nests nests = nests(inner("b", "a", "B"));
+
+		assertEquals(1, nests.getDepth("b"));
+		assertEquals(names("b"), names(nests.getChildren("a")));
+
+		nests.add(inner("a", "z", "A"));
+
+		assertEquals(2, nests.getDepth("b"));
+		assertEquals("z", nests.getOutermostClass("b"));
+		assertEquals(names("a"), names(nests.getChildren("z")));
+	}
+
+	@Test
+	public void cyclesAreCut() {
+		Nests nests = nests(inner("a", "b", "A"), inner("b", "a", "B"));
+
+		assertTrue(nests.getDepth("a") > 0);
+		assertTrue(nests.getDepth("b") > 0);
+		assertEquals(1, Math.abs(nests.getDepth("a") - nests.getDepth("b")));
+	}
+
+	private static Set<String> names(String... classNames) {
+		Set<String> names = new HashSet<>();
+
+		for (String className : classNames) {
+			names.add(className);
+		}
+
+		return names;
+	}
+
+	private static Set<String> names(Collection<Nest> nests) {
+		Set<String> names = new HashSet<>();
+
+		for (Nest nest : nests) {
+			names.add(nest.className);
+		}
+
+		return names;
+	}
+}